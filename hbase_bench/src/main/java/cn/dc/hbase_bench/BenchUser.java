@@ -0,0 +1,40 @@
+package cn.dc.hbase_bench;
+
+import lombok.Data;
+
+/**
+ * 基准测试用的pojo,字段类型覆盖常见的字符串、数值和布尔
+ * 不含日期,原有的BeanWrapper和fastjson路径都不能从toString()的文本还原Date
+ */
+@Data
+public class BenchUser {
+
+    private String name;
+
+    private String target;
+
+    private String targetSet;
+
+    private String city;
+
+    private Integer age;
+
+    private Long score;
+
+    private Double balance;
+
+    private Boolean vip;
+
+    public static BenchUser sample(int i) {
+        BenchUser user = new BenchUser();
+        user.setName("user" + i);
+        user.setTarget("target" + (i % 100));
+        user.setTargetSet("set" + (i % 10));
+        user.setCity("hangzhou");
+        user.setAge(20 + i % 50);
+        user.setScore(1000000L + i);
+        user.setBalance(i * 1.5d);
+        user.setVip(i % 2 == 0);
+        return user;
+    }
+}
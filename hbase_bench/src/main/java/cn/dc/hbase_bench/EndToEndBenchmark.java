@@ -0,0 +1,126 @@
+package cn.dc.hbase_bench;
+
+import cn.dc.hbase_learn.HbaseLearnApplication;
+import cn.dc.hbase_learn.utils.HbaseTemplateUtil;
+import cn.dc.hbase_learn.utils.MultiGetResult;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于进程内mini集群的端到端读写
+ * <p>
+ * 启动HBaseTestingUtility(zk + master + 一个region server),再用指向它的配置启动hbase_learn的spring容器,
+ * 测的是HbaseTemplateUtil完整路径:连接池、映射、rpc。读缓存关闭,每次都走rpc。
+ * 绝对值受本机磁盘和cpu影响大,只用于同一台机器上的前后对比。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@Threads(4)
+public class EndToEndBenchmark {
+
+    private static final String TABLE = "bench_user";
+
+    private static final String FAMILY = "info";
+
+    @Param({"10000"})
+    private int rows;
+
+    @Param({"string", "binary"})
+    private String codec;
+
+    private HBaseTestingUtility cluster;
+
+    private ConfigurableApplicationContext context;
+
+    private HbaseTemplateUtil util;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        cluster = new HBaseTestingUtility();
+        cluster.startMiniCluster();
+        //命令行参数优先级高于hbase_learn自带的application.yml
+        context = new SpringApplicationBuilder(HbaseLearnApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--hbase.zookeeper.quorum=localhost",
+                        "--hbase.zookeeper.property.clientPort=" + cluster.getZkCluster().getClientPort(),
+                        "--hbase.codec.type=" + codec,
+                        "--hbase.cache.enabled=false");
+        util = context.getBean(HbaseTemplateUtil.class);
+        util.createTable(TABLE, FAMILY);
+        Map<Object, String> users = new IdentityHashMap<>(rows);
+        for (int i = 0; i < rows; i++) {
+            users.put(BenchUser.sample(i), rowkey(i));
+        }
+        util.createProBatch(users.keySet(), TABLE, FAMILY, users::get);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (context != null) context.close();
+        if (cluster != null) cluster.shutdownMiniCluster();
+    }
+
+    private static String rowkey(long i) {
+        return String.format("row%08d", i);
+    }
+
+    private String randomRowkey() {
+        return rowkey(ThreadLocalRandom.current().nextInt(rows));
+    }
+
+    @Benchmark
+    public BenchUser get() {
+        return util.getOneToClass(BenchUser.class, TABLE, randomRowkey());
+    }
+
+    @Benchmark
+    public Object put() {
+        int i = ThreadLocalRandom.current().nextInt(rows);
+        return util.createPro(BenchUser.sample(i), TABLE, FAMILY, rowkey(i));
+    }
+
+    /*100个rowkey一次批量get*/
+    @Benchmark
+    public MultiGetResult<BenchUser> multiGet100() {
+        int start = ThreadLocalRandom.current().nextInt(rows - 100);
+        List<String> rowkeys = new ArrayList<>(100);
+        for (int i = start; i < start + 100; i++) {
+            rowkeys.add(rowkey(i));
+        }
+        return util.getManyToClass(BenchUser.class, TABLE, rowkeys);
+    }
+
+    /*连续100行的范围scan*/
+    @Benchmark
+    public List<BenchUser> scan100() {
+        int start = ThreadLocalRandom.current().nextInt(rows - 100);
+        return util.findByRowRange(BenchUser.class, TABLE, rowkey(start), rowkey(start + 100));
+    }
+}
@@ -0,0 +1,110 @@
+package cn.dc.hbase_bench;
+
+import cn.dc.hbase_learn.codec.BinaryValueCodec;
+import cn.dc.hbase_learn.codec.StringValueCodec;
+import cn.dc.hbase_learn.mapper.PojoMapper;
+import cn.dc.hbase_learn.mapper.PojoMapperRegistry;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一行Result转对象的各条路径
+ * <p>
+ * beanWrapper、fastjson是searchAll、getOneToClass原来的实现,map是getOneToMap的实现,
+ * pojoMapper是现在的编译映射器,分别在文本编码和二进制编码下测试。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingBenchmark {
+
+    private PojoMapper<BenchUser> stringMapper;
+
+    private PojoMapper<BenchUser> binaryMapper;
+
+    private Result stringRow;
+
+    private Result binaryRow;
+
+    @Setup
+    public void setup() {
+        PojoMapperRegistry stringRegistry = new PojoMapperRegistry(new StringValueCodec());
+        PojoMapperRegistry binaryRegistry = new PojoMapperRegistry(new BinaryValueCodec(false));
+        stringMapper = stringRegistry.get(BenchUser.class);
+        binaryMapper = binaryRegistry.get(BenchUser.class);
+        stringRow = Rows.toResult(stringRegistry, BenchUser.sample(42), "row42");
+        binaryRow = Rows.toResult(binaryRegistry, BenchUser.sample(42), "row42");
+    }
+
+    @Benchmark
+    public BenchUser pojoMapperString() throws Exception {
+        return stringMapper.mapRow(stringRow, 0);
+    }
+
+    @Benchmark
+    public BenchUser pojoMapperBinary() throws Exception {
+        return binaryMapper.mapRow(binaryRow, 0);
+    }
+
+    /*原searchAll的实现*/
+    @Benchmark
+    public BenchUser beanWrapper() throws Exception {
+        BenchUser pojo = BenchUser.class.newInstance();
+        BeanWrapper beanWrapper = PropertyAccessorFactory.forBeanPropertyAccess(pojo);
+        List<Cell> ceList = stringRow.listCells();
+        for (Cell cellItem : ceList) {
+            String cellName = new String(CellUtil.cloneQualifier(cellItem));
+            if (!"class".equals(cellName)) {
+                beanWrapper.setPropertyValue(cellName, new String(CellUtil.cloneValue(cellItem)));
+            }
+        }
+        return pojo;
+    }
+
+    /*原getOneToClass的实现*/
+    @Benchmark
+    public BenchUser fastjson() {
+        JSONObject obj = new JSONObject();
+        for (Cell cell : stringRow.listCells()) {
+            obj.put(Bytes.toString(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength()),
+                    Bytes.toString(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength()));
+        }
+        return JSON.parseObject(obj.toJSONString(), BenchUser.class);
+    }
+
+    /*getOneToMap的实现*/
+    @Benchmark
+    public Map<String, Object> map() {
+        Map<String, Object> map = new HashMap<String, Object>();
+        for (Cell cell : stringRow.listCells()) {
+            map.put(Bytes.toString(cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength()) +
+                            "_" + Bytes.toString(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength()),
+                    Bytes.toString(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength()));
+        }
+        return map;
+    }
+}
@@ -0,0 +1,78 @@
+package cn.dc.hbase_bench;
+
+import cn.dc.hbase_learn.codec.BinaryValueCodec;
+import cn.dc.hbase_learn.codec.StringValueCodec;
+import cn.dc.hbase_learn.mapper.PojoMapper;
+import cn.dc.hbase_learn.mapper.PojoMapperRegistry;
+import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+
+import java.beans.PropertyDescriptor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * createPro里pojo转Put的开销,beanWrapper是原来的实现
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PutBenchmark {
+
+    private static final byte[] ROWKEY = Bytes.toBytes("row42");
+
+    private PojoMapper<BenchUser> stringMapper;
+
+    private PojoMapper<BenchUser> binaryMapper;
+
+    private BenchUser pojo;
+
+    @Setup
+    public void setup() {
+        stringMapper = new PojoMapperRegistry(new StringValueCodec()).get(BenchUser.class);
+        binaryMapper = new PojoMapperRegistry(new BinaryValueCodec(false)).get(BenchUser.class);
+        pojo = BenchUser.sample(42);
+    }
+
+    @Benchmark
+    public Put pojoMapperString() {
+        return stringMapper.toPut(pojo, Rows.FAMILY, ROWKEY);
+    }
+
+    @Benchmark
+    public Put pojoMapperBinary() {
+        return binaryMapper.toPut(pojo, Rows.FAMILY, ROWKEY);
+    }
+
+    /*原createPro的实现,和原代码一样会把class属性也写进put*/
+    @Benchmark
+    public Put beanWrapper() {
+        PropertyDescriptor[] pds = BeanUtils.getPropertyDescriptors(pojo.getClass());
+        BeanWrapper beanWrapper = PropertyAccessorFactory.forBeanPropertyAccess(pojo);
+        Put put = new Put(ROWKEY);
+        for (PropertyDescriptor propertyDescriptor : pds) {
+            String properName = propertyDescriptor.getName();
+            String value = beanWrapper.getPropertyValue(properName).toString();
+            if (!StringUtils.isBlank(value)) {
+                put.addColumn(Rows.FAMILY, Bytes.toBytes(properName), Bytes.toBytes(value));
+            }
+        }
+        return put;
+    }
+}
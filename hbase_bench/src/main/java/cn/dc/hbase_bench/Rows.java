@@ -0,0 +1,46 @@
+package cn.dc.hbase_bench;
+
+import cn.dc.hbase_learn.mapper.PojoMapperRegistry;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 在内存中构造Result,不经过rpc,和region server返回的结构一致(cell按qualifier排序)
+ */
+final class Rows {
+
+    static final byte[] FAMILY = Bytes.toBytes("info");
+
+    private Rows() {
+    }
+
+    /**
+     * 用给定的映射器把pojo写成put,再把put里的cell组装成Result
+     */
+    static Result toResult(PojoMapperRegistry registry, Object pojo, String rowkey) {
+        Put put = registry.get(pojo.getClass()).toPut(pojo, FAMILY, Bytes.toBytes(rowkey));
+        List<Cell> cells = new ArrayList<>();
+        for (Map.Entry<byte[], List<Cell>> entry : put.getFamilyCellMap().entrySet()) {
+            for (Cell cell : entry.getValue()) {
+                cells.add(new KeyValue(put.getRow(), FAMILY, cloneQualifier(cell), 1L, cloneValue(cell)));
+            }
+        }
+        cells.sort(KeyValue.COMPARATOR);
+        return Result.create(cells);
+    }
+
+    private static byte[] cloneQualifier(Cell cell) {
+        return Bytes.copy(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength());
+    }
+
+    private static byte[] cloneValue(Cell cell) {
+        return Bytes.copy(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+    }
+}
@@ -0,0 +1,54 @@
+package cn.dc.hbase_learn.aggregate;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.coprocessor.LongColumnInterpreter;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * 按本项目的编码读取整数列的ColumnInterpreter
+ * <p>
+ * LongColumnInterpreter只认8字节的Bytes.toBytes(long),而这里的值是toString文本或二进制编码的varint,
+ * 两种都能读,所以不需要知道客户端配置的是哪种编码。
+ * 聚合在region server上执行,这个类要放在region server的classpath里;解码自包含,只依赖HBase,
+ * 格式与BinaryValueCodec的整数编码一致。类加载不到时HbaseAggregator退回客户端scan。
+ * 只统计指定的列,过滤条件带进来的其他列忽略;不是整数的值不参与聚合。
+ */
+public class CodecLongColumnInterpreter extends LongColumnInterpreter {
+
+    /*与BinaryValueCodec.TAG_VARINT相同*/
+    private static final byte TAG_VARINT = 0x01;
+
+    @Override
+    public Long getValue(byte[] colFamily, byte[] colQualifier, Cell kv) {
+        if (kv == null) return null;
+        if (colFamily != null && !CellUtil.matchingFamily(kv, colFamily)) return null;
+        if (colQualifier != null && !CellUtil.matchingQualifier(kv, colQualifier)) return null;
+        return decode(kv.getValueArray(), kv.getValueOffset(), kv.getValueLength());
+    }
+
+    /*
+    标记 + zigzag varint,或十进制文本;都不是时返回null
+     */
+    static Long decode(byte[] bytes, int offset, int length) {
+        if (length == 0) return null;
+        if (bytes[offset] == TAG_VARINT) {
+            long zigzag = 0;
+            int shift = 0;
+            for (int i = offset + 1; i < offset + length && shift < 64; i++) {
+                byte b = bytes[i];
+                zigzag |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+                shift += 7;
+            }
+            return null;
+        }
+        try {
+            return Long.parseLong(Bytes.toString(bytes, offset, length).trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package cn.dc.hbase_learn.aggregate;
+
+import cn.dc.hbase_learn.codec.ValueDecoder;
+import cn.dc.hbase_learn.pool.HbaseConnectionPool;
+import cn.dc.hbase_learn.rowkey.RowKeyStrategyRegistry;
+import cn.dc.hbase_learn.scan.Projection;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.client.coprocessor.AggregationClient;
+import org.apache.hadoop.hbase.coprocessor.AggregateImplementation;
+import org.apache.hadoop.hbase.exceptions.UnknownProtocolException;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * count/sum/min/max聚合,在region server上由AggregateImplementation计算
+ * <p>
+ * 每个region只返回一个部分结果,客户端合并,不再把行数据拉回来。
+ * 加盐的表每个桶各执行一次再合并。表上没有注册协处理器时退回客户端scan,只取参与计算的列。
+ * 值过滤器引用了被聚合列以外的列时,服务端只能看到一个列族的一个列,同样退回客户端scan。
+ * groupCount没有现成的endpoint,用只取分组列的scan在客户端计数。
+ */
+public class HbaseAggregator implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(HbaseAggregator.class);
+
+    private final HbaseConnectionPool connectionPool;
+
+    private final AggregationClient aggregationClient;
+
+    private final RowKeyStrategyRegistry rowKeys;
+
+    private final CodecLongColumnInterpreter interpreter = new CodecLongColumnInterpreter();
+
+    public HbaseAggregator(HbaseConnectionPool connectionPool, AggregationClient aggregationClient, RowKeyStrategyRegistry rowKeys) {
+        this.connectionPool = connectionPool;
+        this.aggregationClient = aggregationClient;
+        this.rowKeys = rowKeys;
+    }
+
+    /**
+     * 给表注册AggregateImplementation,已注册时不做修改
+     */
+    public void enable(String tableName) throws IOException {
+        String className = AggregateImplementation.class.getName();
+        try (Admin admin = connectionPool.borrow().getAdmin()) {
+            HTableDescriptor descriptor = admin.getTableDescriptor(TableName.valueOf(tableName));
+            if (!descriptor.hasCoprocessor(className)) {
+                descriptor.addCoprocessor(className);
+                admin.modifyTable(descriptor.getTableName(), descriptor);
+            }
+        }
+    }
+
+    /**
+     * 行数
+     */
+    public long count(String tableName, Scan scan) throws Throwable {
+        Long count = aggregate(tableName, scan, null, null,
+                (table, bucket) -> aggregationClient.rowCount(table, interpreter, bucket), Long::sum, Accumulator::getCount);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * 列值之和,没有数值时返回null
+     */
+    public Long sum(String tableName, Scan scan, byte[] family, byte[] qualifier) throws Throwable {
+        return aggregate(tableName, scan, family, qualifier,
+                (table, bucket) -> aggregationClient.sum(table, interpreter, bucket), Long::sum, Accumulator::getSum);
+    }
+
+    public Long min(String tableName, Scan scan, byte[] family, byte[] qualifier) throws Throwable {
+        return aggregate(tableName, scan, family, qualifier,
+                (table, bucket) -> aggregationClient.min(table, interpreter, bucket), Math::min, Accumulator::getMin);
+    }
+
+    public Long max(String tableName, Scan scan, byte[] family, byte[] qualifier) throws Throwable {
+        return aggregate(tableName, scan, family, qualifier,
+                (table, bucket) -> aggregationClient.max(table, interpreter, bucket), Math::max, Accumulator::getMax);
+    }
+
+    /**
+     * 按列值分组计数,没有该列的行不计
+     *
+     * @param decoder 把列值解码成分组key
+     */
+    @SuppressWarnings("unchecked")
+    public <K> Map<K, Long> groupCount(String tableName, Scan scan, byte[] family, byte[] qualifier, ValueDecoder decoder) throws IOException {
+        Map<K, Long> groups = new HashMap<>();
+        Scan projected = Projection.of(Bytes.toString(family), Bytes.toString(qualifier)).apply(new Scan(scan), null);
+        try (Table table = connectionPool.borrow().getTable(TableName.valueOf(tableName))) {
+            for (Scan bucket : rowKeys.forTable(tableName).fanOut(projected)) {
+                try (ResultScanner scanner = table.getScanner(bucket)) {
+                    for (Result result : scanner) {
+                        Cell cell = result.getColumnLatestCell(family, qualifier);
+                        if (cell == null) continue;
+                        K key = (K) decoder.decode(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+                        if (key != null) groups.merge(key, 1L, Long::sum);
+                    }
+                }
+            }
+        }
+        return groups;
+    }
+
+    /*
+    在每个桶上调用一次协处理器并合并部分结果,不能走协处理器时退回客户端scan
+     */
+    private Long aggregate(String tableName, Scan scan, byte[] family, byte[] qualifier, Call call,
+                           BinaryOperator<Long> merge, Function<Accumulator, Long> fallback) throws Throwable {
+        if (serverSide(scan, family, qualifier)) {
+            Scan columnScan = new Scan(scan);
+            if (family != null) {
+                columnScan.addColumn(family, qualifier);
+            }
+            try (Table table = connectionPool.borrow().getTable(TableName.valueOf(tableName))) {
+                Long merged = null;
+                for (Scan bucket : rowKeys.forTable(tableName).fanOut(columnScan)) {
+                    Long partial = call.call(table, bucket);
+                    if (partial != null) {
+                        merged = merged == null ? partial : merge.apply(merged, partial);
+                    }
+                }
+                return merged;
+            } catch (Throwable e) {
+                if (!coprocessorMissing(e)) throw e;
+                log.warn("{} has no {} or {} on the region servers, aggregating on the client", tableName,
+                        AggregateImplementation.class.getSimpleName(), CodecLongColumnInterpreter.class.getSimpleName());
+            }
+        }
+        return fallback.apply(scanAggregate(tableName, scan, family, qualifier));
+    }
+
+    /*
+    服务端只处理一个列族里的一个列,值过滤器引用的列都必须是被聚合的列
+     */
+    private static boolean serverSide(Scan scan, byte[] family, byte[] qualifier) {
+        if (family == null) return true;
+        for (SingleColumnValueFilter valueFilter : Projection.valueFilters(scan.getFilter())) {
+            if (!Bytes.equals(valueFilter.getFamily(), family) || !Bytes.equals(valueFilter.getQualifier(), qualifier)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+    没有加载AggregateImplementation,或region server上找不到CodecLongColumnInterpreter
+     */
+    private static boolean coprocessorMissing(Throwable e) {
+        String interpreter = CodecLongColumnInterpreter.class.getName();
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof UnknownProtocolException) return true;
+            //异常从region server传回时可能只剩类名
+            String message = cause.getMessage();
+            if (message == null) continue;
+            if (message.contains(UnknownProtocolException.class.getName())) return true;
+            if (message.contains(interpreter) && (cause instanceof ClassNotFoundException || cause instanceof NoClassDefFoundError
+                    || message.contains(ClassNotFoundException.class.getSimpleName())
+                    || message.contains(NoClassDefFoundError.class.getSimpleName()))) return true;
+        }
+        return false;
+    }
+
+    /*
+    客户端scan聚合,只取被聚合的列和值过滤器需要的列
+     */
+    private Accumulator scanAggregate(String tableName, Scan scan, byte[] family, byte[] qualifier) throws IOException {
+        Scan projected = new Scan(scan);
+        if (family != null) {
+            Projection.of(Bytes.toString(family), Bytes.toString(qualifier)).apply(projected, null);
+        } else if (projected.getFilter() == null) {
+            projected.setFilter(new FirstKeyOnlyFilter());
+        } else {
+            //过滤器先看到原值,之后去掉value不传回客户端
+            projected.setFilter(new FilterList(FilterList.Operator.MUST_PASS_ALL, projected.getFilter(), new KeyOnlyFilter()));
+        }
+        Accumulator accumulator = new Accumulator();
+        try (Table table = connectionPool.borrow().getTable(TableName.valueOf(tableName))) {
+            for (Scan bucket : rowKeys.forTable(tableName).fanOut(projected)) {
+                try (ResultScanner scanner = table.getScanner(bucket)) {
+                    for (Result result : scanner) {
+                        accumulator.count++;
+                        if (family != null) {
+                            accumulator.add(interpreter.getValue(family, qualifier, result.getColumnLatestCell(family, qualifier)));
+                        }
+                    }
+                }
+            }
+        }
+        return accumulator;
+    }
+
+    /**
+     * 关闭AggregationClient自己的连接
+     */
+    @Override
+    public void close() throws IOException {
+        aggregationClient.close();
+    }
+
+    /*
+    一个桶上的协处理器调用
+     */
+    private interface Call {
+        Long call(Table table, Scan scan) throws Throwable;
+    }
+
+    /*
+    客户端聚合的中间结果
+     */
+    private static final class Accumulator {
+
+        private long count;
+
+        private Long sum;
+
+        private Long min;
+
+        private Long max;
+
+        void add(Long value) {
+            if (value == null) return;
+            sum = sum == null ? value : sum + value;
+            min = min == null ? value : Math.min(min, value);
+            max = max == null ? value : Math.max(max, value);
+        }
+
+        Long getCount() {
+            return count;
+        }
+
+        Long getSum() {
+            return sum;
+        }
+
+        Long getMin() {
+            return min;
+        }
+
+        Long getMax() {
+            return max;
+        }
+    }
+}
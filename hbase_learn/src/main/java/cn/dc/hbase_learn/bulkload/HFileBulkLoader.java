@@ -0,0 +1,172 @@
+package cn.dc.hbase_learn.bulkload;
+
+import cn.dc.hbase_learn.cache.RowCache;
+import cn.dc.hbase_learn.index.SecondaryIndexManager;
+import cn.dc.hbase_learn.mapper.PojoMapperRegistry;
+import cn.dc.hbase_learn.pool.HbaseConnectionPool;
+import cn.dc.hbase_learn.rowkey.RowKeyStrategy;
+import cn.dc.hbase_learn.rowkey.RowKeyStrategyRegistry;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * 批量导入:把pojo直接写成HFile,再交给LoadIncrementalHFiles移进region,不经过WAL和memstore
+ * <p>
+ * 数据按表当前的region边界切分,每个region每个列族一个HFile,见TableHFileWriter。
+ * rowkey按表的rowkey策略转换;配置了二级索引的表同时生成索引表的HFile,并先于数据表加载。
+ * HFile写在stagingDir下,默认是本地文件系统,只适合region server和客户端在同一台机器的情况,
+ * 集群上要配置成hdfs路径,否则region server读不到文件。
+ * 加载失败时保留stagingDir下的文件,可以用LoadIncrementalHFiles命令行重试。
+ */
+public class HFileBulkLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(HFileBulkLoader.class);
+
+    private final Configuration conf;
+
+    private final HbaseConnectionPool connectionPool;
+
+    private final PojoMapperRegistry mapperRegistry;
+
+    private final SecondaryIndexManager indexManager;
+
+    private final RowKeyStrategyRegistry rowKeys;
+
+    private final RowCache rowCache;
+
+    private final Path stagingDir;
+
+    private final File spillDir;
+
+    private final long bufferBytes;
+
+    public HFileBulkLoader(Configuration conf, HbaseConnectionPool connectionPool, PojoMapperRegistry mapperRegistry,
+                           SecondaryIndexManager indexManager, RowKeyStrategyRegistry rowKeys, RowCache rowCache,
+                           String stagingDir, String spillDir, long bufferBytes) {
+        this.conf = conf;
+        this.connectionPool = connectionPool;
+        this.mapperRegistry = mapperRegistry;
+        this.indexManager = indexManager;
+        this.rowKeys = rowKeys;
+        this.rowCache = rowCache;
+        this.stagingDir = new Path(stagingDir);
+        this.spillDir = spillDir == null || spillDir.isEmpty() ? null : new File(spillDir);
+        this.bufferBytes = bufferBytes;
+    }
+
+    /**
+     * 导入一批pojo,规则与createProBatch相同
+     * 同一批里rowkey重复时,重复的列保留哪一个不确定
+     *
+     * @param family   列族
+     * @param rowkeyOf 从pojo取rowkey
+     * @return 导入的行数
+     */
+    public long load(String tableName, String family, Iterator<?> pojos, Function<Object, String> rowkeyOf) throws IOException {
+        Connection connection = connectionPool.borrow();
+        TableName dataTable = TableName.valueOf(tableName);
+        Path jobDir = new Path(stagingDir, dirName(dataTable) + "-" + UUID.randomUUID());
+        FileSystem fs = jobDir.getFileSystem(conf);
+        long timestamp = System.currentTimeMillis();
+        Map<TableName, TableHFileWriter> indexWriters = new LinkedHashMap<>();
+        TableHFileWriter dataWriter = null;
+        RowKeyStrategy strategy = rowKeys.forTable(tableName);
+        byte[] familyBytes = Bytes.toBytes(family);
+        long rows = 0;
+        try {
+            dataWriter = createWriter(connection, fs, jobDir, dataTable, timestamp);
+            while (pojos.hasNext()) {
+                Object pojo = pojos.next();
+                Put put = mapperRegistry.get(pojo.getClass()).toPut(pojo, familyBytes, Bytes.toBytes(strategy.encode(rowkeyOf.apply(pojo))));
+                if (put.isEmpty()) continue;
+                for (Map.Entry<TableName, List<Put>> entry : indexManager.indexPuts(tableName, Collections.singletonList(put)).entrySet()) {
+                    TableHFileWriter indexWriter = indexWriters.get(entry.getKey());
+                    if (indexWriter == null) {
+                        indexWriter = createWriter(connection, fs, jobDir, entry.getKey(), timestamp);
+                        indexWriters.put(entry.getKey(), indexWriter);
+                    }
+                    for (Put indexPut : entry.getValue()) {
+                        indexWriter.add(indexPut);
+                    }
+                }
+                dataWriter.add(put);
+                rows++;
+            }
+            //索引先于数据加载,和createPro的写入顺序一致
+            Map<TableName, TableHFileWriter> ordered = new LinkedHashMap<>(indexWriters);
+            ordered.put(dataTable, dataWriter);
+            for (TableHFileWriter writer : ordered.values()) {
+                writer.finish();
+            }
+            for (Map.Entry<TableName, TableHFileWriter> entry : ordered.entrySet()) {
+                if (entry.getValue().getCellCount() == 0) continue;
+                log.info("bulk loading {} cells in {} hfiles into {}", entry.getValue().getCellCount(),
+                        entry.getValue().getFileCount(), entry.getKey());
+                complete(connection, entry.getKey(), entry.getValue().getOutputDir());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("bulk load into {} failed, hfiles kept in {}", tableName, jobDir);
+            throw e;
+        } finally {
+            for (TableHFileWriter writer : indexWriters.values()) {
+                writer.close();
+            }
+            if (dataWriter != null) {
+                dataWriter.close();
+            }
+            rowCache.invalidateAll(tableName);
+        }
+        fs.delete(jobDir, true);
+        return rows;
+    }
+
+    private TableHFileWriter createWriter(Connection connection, FileSystem fs, Path jobDir, TableName tableName, long timestamp) throws IOException {
+        try (Admin admin = connection.getAdmin(); RegionLocator locator = connection.getRegionLocator(tableName)) {
+            return new TableHFileWriter(conf, fs, new Path(jobDir, dirName(tableName)), admin.getTableDescriptor(tableName),
+                    locator.getStartKeys(), spillDir, bufferBytes, timestamp);
+        }
+    }
+
+    /*命名空间的冒号不能出现在路径里*/
+    private static String dirName(TableName tableName) {
+        return tableName.getNameAsString().replace(':', '_');
+    }
+
+    /*
+    LoadIncrementalHFiles把文件移进对应的region,加载期间region分裂过的文件会被重新切分
+     */
+    private void complete(Connection connection, TableName tableName, Path dir) throws IOException {
+        LoadIncrementalHFiles loader;
+        try {
+            loader = new LoadIncrementalHFiles(conf);
+        } catch (Exception e) {
+            throw new IOException("could not create LoadIncrementalHFiles", e);
+        }
+        try (Admin admin = connection.getAdmin();
+             Table table = connection.getTable(tableName);
+             RegionLocator locator = connection.getRegionLocator(tableName)) {
+            loader.doBulkLoad(dir, admin, table, locator);
+        }
+    }
+}
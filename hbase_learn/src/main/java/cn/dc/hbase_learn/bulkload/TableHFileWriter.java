@@ -0,0 +1,347 @@
+package cn.dc.hbase_learn.bulkload;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.regionserver.HStore;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * 一张表的HFile输出,文件格式和设置与HFileOutputFormat2相同
+ * <p>
+ * cell先放在内存缓冲区,满了按KeyValue顺序排好溢写到本地临时文件;finish时多路归并,
+ * 按region边界切分,每个region每个列族写一个HFile。
+ * 这样不管数据量多大,每个region每个列族只有一个文件,不会超过LoadIncrementalHFiles的文件数限制。
+ */
+class TableHFileWriter implements Closeable {
+
+    private final Configuration conf;
+
+    private final CacheConfig cacheConfig;
+
+    private final FileSystem fs;
+
+    private final Path outputDir;
+
+    private final HTableDescriptor descriptor;
+
+    private final byte[][] startKeys;
+
+    private final File spillDir;
+
+    private final long bufferBytes;
+
+    private final byte[] timestamp;
+
+    private final List<KeyValue> buffer = new ArrayList<>();
+
+    private long bufferedBytes;
+
+    private final List<File> runs = new ArrayList<>();
+
+    private long cellCount;
+
+    private int fileCount;
+
+    /**
+     * @param outputDir HFile输出目录,下面按列族分子目录
+     * @param startKeys 表当前各region的起始rowkey
+     * @param spillDir  溢写目录,null时使用java.io.tmpdir
+     * @param timestamp 所有cell的时间戳
+     */
+    TableHFileWriter(Configuration conf, FileSystem fs, Path outputDir, HTableDescriptor descriptor, byte[][] startKeys,
+                     File spillDir, long bufferBytes, long timestamp) {
+        this.conf = conf;
+        //和HFileOutputFormat2一样,写文件不占用block cache
+        Configuration noCache = new Configuration(conf);
+        noCache.setFloat(HConstants.HFILE_BLOCK_CACHE_SIZE_KEY, 0.0f);
+        this.cacheConfig = new CacheConfig(noCache);
+        this.fs = fs;
+        this.outputDir = outputDir;
+        this.descriptor = descriptor;
+        this.startKeys = startKeys;
+        this.spillDir = spillDir;
+        this.bufferBytes = bufferBytes;
+        this.timestamp = Bytes.toBytes(timestamp);
+    }
+
+    Path getOutputDir() {
+        return outputDir;
+    }
+
+    long getCellCount() {
+        return cellCount;
+    }
+
+    int getFileCount() {
+        return fileCount;
+    }
+
+    void add(Put put) throws IOException {
+        for (List<Cell> cells : put.getFamilyCellMap().values()) {
+            for (Cell cell : cells) {
+                KeyValue kv = KeyValueUtil.ensureKeyValue(cell);
+                kv.updateLatestStamp(timestamp);
+                buffer.add(kv);
+                bufferedBytes += kv.heapSize();
+            }
+        }
+        if (bufferedBytes >= bufferBytes) {
+            spill();
+        }
+    }
+
+    /**
+     * 写出所有HFile
+     */
+    void finish() throws IOException {
+        buffer.sort(KeyValue.COMPARATOR);
+        if (runs.isEmpty()) {
+            write(buffer.iterator());
+            return;
+        }
+        List<RunReader> readers = new ArrayList<>(runs.size());
+        try {
+            List<Iterator<KeyValue>> sources = new ArrayList<>(runs.size() + 1);
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                sources.add(reader);
+            }
+            sources.add(buffer.iterator());
+            write(new MergingIterator(sources));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /*
+    排序后溢写一个有序段,格式为KeyValue.write的序列,以长度0结尾
+     */
+    private void spill() throws IOException {
+        buffer.sort(KeyValue.COMPARATOR);
+        File run = File.createTempFile("hfile-run-", ".kv", spillDir);
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+            for (KeyValue kv : buffer) {
+                KeyValue.write(kv, out);
+            }
+            out.writeInt(0);
+        }
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    /*
+    有序的cell按region边界切分写HFile,跨过下一个region的起始rowkey时换文件
+     */
+    private void write(Iterator<KeyValue> sorted) throws IOException {
+        List<StoreFile.Writer> writers = new ArrayList<>();
+        List<byte[]> writerFamilies = new ArrayList<>();
+        byte[] regionEnd = null;
+        boolean started = false;
+        try {
+            while (sorted.hasNext()) {
+                KeyValue kv = sorted.next();
+                if (!started || regionEnd != null
+                        && Bytes.compareTo(kv.getRowArray(), kv.getRowOffset(), kv.getRowLength(), regionEnd, 0, regionEnd.length) >= 0) {
+                    closeAll(writers);
+                    writerFamilies.clear();
+                    regionEnd = regionEnd(CellUtil.cloneRow(kv));
+                    started = true;
+                }
+                StoreFile.Writer writer = null;
+                for (int i = 0; i < writerFamilies.size(); i++) {
+                    if (CellUtil.matchingFamily(kv, writerFamilies.get(i))) {
+                        writer = writers.get(i);
+                        break;
+                    }
+                }
+                if (writer == null) {
+                    byte[] family = CellUtil.cloneFamily(kv);
+                    writer = createWriter(family);
+                    writers.add(writer);
+                    writerFamilies.add(family);
+                }
+                writer.append(kv);
+                cellCount++;
+            }
+        } finally {
+            closeAll(writers);
+        }
+    }
+
+    /*
+    row所在region的结束rowkey,最后一个region返回null
+     */
+    private byte[] regionEnd(byte[] row) {
+        int index = Arrays.binarySearch(startKeys, row, Bytes.BYTES_COMPARATOR);
+        int region = index >= 0 ? index : -index - 2;
+        return region + 1 < startKeys.length ? startKeys[region + 1] : null;
+    }
+
+    private StoreFile.Writer createWriter(byte[] familyName) throws IOException {
+        HColumnDescriptor family = descriptor.getFamily(familyName);
+        if (family == null) {
+            throw new IOException("table " + descriptor.getNameAsString() + " has no family " + Bytes.toString(familyName));
+        }
+        HFileContextBuilder contextBuilder = new HFileContextBuilder()
+                .withCompression(family.getCompressionType())
+                .withChecksumType(HStore.getChecksumType(conf))
+                .withBytesPerCheckSum(HStore.getBytesPerChecksum(conf))
+                .withBlockSize(family.getBlocksize())
+                .withDataBlockEncoding(family.getDataBlockEncoding());
+        if (HFile.getFormatVersion(conf) >= HFile.MIN_FORMAT_VERSION_WITH_TAGS) {
+            contextBuilder.withIncludesTags(true);
+        }
+        HFileContext context = contextBuilder.build();
+        fileCount++;
+        return new StoreFile.WriterBuilder(conf, cacheConfig, fs)
+                .withOutputDir(new Path(outputDir, family.getNameAsString()))
+                .withBloomType(family.getBloomFilterType())
+                .withComparator(KeyValue.COMPARATOR)
+                .withFileContext(context)
+                .build();
+    }
+
+    /*
+    写入bulk load需要的文件信息后关闭
+     */
+    private void closeAll(List<StoreFile.Writer> writers) throws IOException {
+        for (StoreFile.Writer writer : writers) {
+            writer.appendFileInfo(StoreFile.BULKLOAD_TIME_KEY, Bytes.toBytes(System.currentTimeMillis()));
+            writer.appendFileInfo(StoreFile.BULKLOAD_TASK_KEY, Bytes.toBytes(descriptor.getNameAsString()));
+            writer.appendFileInfo(StoreFile.MAJOR_COMPACTION_KEY, Bytes.toBytes(true));
+            writer.appendFileInfo(StoreFile.EXCLUDE_FROM_MINOR_COMPACTION_KEY, Bytes.toBytes(false));
+            writer.appendTrackedTimestampsToMetadata();
+            writer.close();
+        }
+        writers.clear();
+    }
+
+    /**
+     * 删除溢写的临时文件
+     */
+    @Override
+    public void close() {
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        buffer.clear();
+    }
+
+    /*
+    顺序读一个溢写段
+     */
+    private static final class RunReader implements Iterator<KeyValue>, Closeable {
+
+        private final DataInputStream in;
+
+        private KeyValue next;
+
+        RunReader(File run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+            this.next = KeyValue.create(in);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public KeyValue next() {
+            if (next == null) throw new NoSuchElementException();
+            KeyValue current = next;
+            try {
+                next = KeyValue.create(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return current;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /*
+    多个有序来源的k路归并
+     */
+    private static final class MergingIterator implements Iterator<KeyValue> {
+
+        private final PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> KeyValue.COMPARATOR.compare(a.kv, b.kv));
+
+        MergingIterator(List<Iterator<KeyValue>> sources) {
+            for (Iterator<KeyValue> source : sources) {
+                if (source.hasNext()) heads.add(new Head(source.next(), source));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public KeyValue next() {
+            Head head = heads.poll();
+            if (head == null) throw new NoSuchElementException();
+            KeyValue current = head.kv;
+            if (head.source.hasNext()) {
+                head.kv = head.source.next();
+                heads.add(head);
+            }
+            return current;
+        }
+    }
+
+    private static final class Head {
+
+        private KeyValue kv;
+
+        private final Iterator<KeyValue> source;
+
+        Head(KeyValue kv, Iterator<KeyValue> source) {
+            this.kv = kv;
+            this.source = source;
+        }
+    }
+}
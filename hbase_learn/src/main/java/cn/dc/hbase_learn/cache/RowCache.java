@@ -0,0 +1,272 @@
+package cn.dc.hbase_learn.cache;
+
+import cn.dc.hbase_learn.config.HbaseCacheProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * 客户端读缓存,缓存getOneToClass/getOneToMap/getColumn读到的Result
+ * <p>
+ * 每张表一个Caffeine缓存(W-TinyLFU淘汰),按Result的堆内存估算值计权,
+ * maximumWeight即该表的内存预算。缓存以rowkey为单位,一行里同时放整行结果和单列结果,
+ * 写入时按rowkey整体失效。单列结果各自记录加载时间,过期判断精确到列。
+ * <p>
+ * 读和写并发时,写之前开始的读可能在失效之后把旧值放回缓存,最长保留ttl。
+ */
+public class RowCache {
+
+    private final HbaseCacheProperties properties;
+
+    private final ConcurrentMap<String, TableCache> caches = new ConcurrentHashMap<>();
+
+    /*表缓存创建时通知,用于注册指标*/
+    private final List<BiConsumer<String, TableCache>> listeners = new CopyOnWriteArrayList<>();
+
+    public RowCache(HbaseCacheProperties properties) {
+        this.properties = properties;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 读穿透
+     *
+     * @param column 列名(family:qualifier),整行传null
+     * @param loader 缓存未命中时从hbase读取
+     */
+    public Result get(String tableName, String rowkey, String column, Supplier<Result> loader) {
+        TableCache tableCache = tableCache(tableName);
+        if (tableCache == null) {
+            return loader.get();
+        }
+        Result hit = getIfPresent(tableCache, rowkey, column);
+        if (hit != null) {
+            return hit;
+        }
+        Result loaded = loader.get();
+        put(tableCache, rowkey, column, loaded);
+        return loaded;
+    }
+
+    /**
+     * 只查缓存,未开启或未命中返回null
+     */
+    public Result getIfPresent(String tableName, String rowkey, String column) {
+        TableCache tableCache = tableCache(tableName);
+        return tableCache == null ? null : getIfPresent(tableCache, rowkey, column);
+    }
+
+    /**
+     * 放入缓存,用于批量读取后回填
+     */
+    public void put(String tableName, String rowkey, String column, Result result) {
+        TableCache tableCache = tableCache(tableName);
+        if (tableCache != null) {
+            put(tableCache, rowkey, column, result);
+        }
+    }
+
+    private Result getIfPresent(TableCache tableCache, String rowkey, String column) {
+        CachedRow cached = tableCache.cache.getIfPresent(rowkey);
+        Result hit = cached == null ? null : cached.get(column == null ? "" : column, tableCache.ttlNanos);
+        if (hit != null) {
+            tableCache.hits.increment();
+        } else {
+            tableCache.misses.increment();
+        }
+        return hit;
+    }
+
+    private void put(TableCache tableCache, String rowkey, String column, Result result) {
+        if (result != null) {
+            tableCache.cache.asMap().merge(rowkey, CachedRow.of(column == null ? "" : column, result), CachedRow::merge);
+        }
+    }
+
+    /**
+     * 写入后失效该行的全部缓存
+     */
+    public void invalidate(String tableName, String rowkey) {
+        TableCache tableCache = caches.get(tableName);
+        if (tableCache != null && tableCache.cache != null) {
+            tableCache.cache.invalidate(rowkey);
+        }
+    }
+
+    public void invalidate(String tableName, Mutation mutation) {
+        invalidate(tableName, Bytes.toString(mutation.getRow()));
+    }
+
+    public void invalidateAll(String tableName) {
+        TableCache tableCache = caches.get(tableName);
+        if (tableCache != null && tableCache.cache != null) {
+            tableCache.cache.invalidateAll();
+        }
+    }
+
+    /**
+     * 已创建的各表缓存,key为表名
+     */
+    public Map<String, TableCache> getTableCaches() {
+        Map<String, TableCache> result = new HashMap<>();
+        caches.forEach((name, tableCache) -> {
+            if (tableCache.cache != null) result.put(name, tableCache);
+        });
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * 每张表的缓存创建时回调,已经创建的表立即回调一次;表缓存按需创建,注册时可能还没有
+     */
+    public void onTableCache(BiConsumer<String, TableCache> listener) {
+        listeners.add(listener);
+        getTableCaches().forEach(listener);
+    }
+
+    private TableCache tableCache(String tableName) {
+        if (!properties.isEnabled()) return null;
+        TableCache tableCache = caches.get(tableName);
+        if (tableCache == null) {
+            //回调不放在computeIfAbsent里执行;并发创建时多出来的缓存直接丢弃
+            TableCache created = createTableCache(tableName);
+            tableCache = caches.putIfAbsent(tableName, created);
+            if (tableCache == null) {
+                tableCache = created;
+                if (created.cache != null) {
+                    listeners.forEach(listener -> listener.accept(tableName, created));
+                }
+            }
+        }
+        return tableCache.cache == null ? null : tableCache;
+    }
+
+    private TableCache createTableCache(String tableName) {
+        HbaseCacheProperties.Table table = properties.getTables().get(tableName);
+        long maxBytes = table != null && table.getMaxBytes() != null ? table.getMaxBytes() : properties.getMaxBytes();
+        Duration ttl = table != null && table.getTtl() != null ? table.getTtl() : properties.getTtl();
+        if (maxBytes <= 0) {
+            return new TableCache(null, 0);
+        }
+        Cache<String, CachedRow> cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String rowkey, CachedRow row) -> (int) Math.min(Integer.MAX_VALUE, row.weight + rowkey.length() * 2L))
+                .expireAfterWrite(ttl.toNanos(), TimeUnit.NANOSECONDS)
+                .recordStats()
+                .build();
+        return new TableCache(cache, ttl.toNanos());
+    }
+
+    /**
+     * 一张表的缓存和命中计数
+     * 命中按列统计,Caffeine自身的stats按行统计,淘汰数以Caffeine为准
+     */
+    public static final class TableCache {
+
+        private final Cache<String, CachedRow> cache;
+
+        private final long ttlNanos;
+
+        private final LongAdder hits = new LongAdder();
+
+        private final LongAdder misses = new LongAdder();
+
+        TableCache(Cache<String, CachedRow> cache, long ttlNanos) {
+            this.cache = cache;
+            this.ttlNanos = ttlNanos;
+        }
+
+        public Cache<String, ?> getCache() {
+            return cache;
+        }
+
+        public long getHitCount() {
+            return hits.sum();
+        }
+
+        public long getMissCount() {
+            return misses.sum();
+        }
+
+        public long getEvictionCount() {
+            return cache.stats().evictionCount();
+        }
+
+        /**
+         * 当前占用的内存估算值
+         */
+        public long getWeightedSize() {
+            return cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L);
+        }
+    }
+
+    /*
+    一行的缓存内容,不可变,新增列时复制
+     */
+    static final class CachedRow {
+
+        private final Map<String, Result> results;
+
+        private final Map<String, Long> loadedAt;
+
+        private final long weight;
+
+        static CachedRow of(String column, Result result) {
+            return new CachedRow(Collections.singletonMap(column, result), Collections.singletonMap(column, System.nanoTime()));
+        }
+
+        private CachedRow(Map<String, Result> results, Map<String, Long> loadedAt) {
+            this.results = results;
+            this.loadedAt = loadedAt;
+            long w = 0;
+            for (Result result : results.values()) {
+                w += weigh(result);
+            }
+            this.weight = w;
+        }
+
+        Result get(String column, long ttlNanos) {
+            Long time = loadedAt.get(column);
+            if (time == null || System.nanoTime() - time > ttlNanos) return null;
+            return results.get(column);
+        }
+
+        CachedRow merge(CachedRow other) {
+            Map<String, Result> results = new HashMap<>(this.results);
+            Map<String, Long> loadedAt = new HashMap<>(this.loadedAt);
+            results.putAll(other.results);
+            loadedAt.putAll(other.loadedAt);
+            return new CachedRow(results, loadedAt);
+        }
+
+        private static long weigh(Result result) {
+            long size = 64;
+            Cell[] cells = result.rawCells();
+            if (cells != null) {
+                for (Cell cell : cells) {
+                    size += CellUtil.estimatedHeapSizeOf(cell);
+                }
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package cn.dc.hbase_learn.codec;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import java.util.Date;
+import java.util.function.LongFunction;
+
+/**
+ * 类型化的二进制编码
+ * <p>
+ * 数值、布尔、日期写成 1字节类型标记 + 二进制值:
+ * 整数(byte/short/int/long)和日期毫秒数用zigzag varint,double/float用定长IEEE754,布尔只有标记字节。
+ * 字符串仍是原始UTF-8,只有首字节恰好落在标记区间时才加一个转义标记,因此字符串列的值过滤不受影响。
+ * 其他类型(BigDecimal、枚举等)按文本写入。
+ * <p>
+ * 兼容模式(compatible=true)下,没有类型标记的值按原来的文本格式解析,
+ * 所以切换编码后老数据仍然可读,新旧数据可以混在同一张表里。
+ */
+public class BinaryValueCodec implements ValueCodec {
+
+    /*类型标记,取值都是不会出现在正常文本开头的控制字符*/
+    static final byte TAG_VARINT = 0x01;
+    static final byte TAG_DOUBLE = 0x02;
+    static final byte TAG_FLOAT = 0x03;
+    static final byte TAG_TRUE = 0x04;
+    static final byte TAG_FALSE = 0x05;
+    static final byte TAG_STRING = 0x06;
+    private static final byte TAG_MAX = 0x08;
+
+    private static final byte[] TRUE = {TAG_TRUE};
+    private static final byte[] FALSE = {TAG_FALSE};
+
+    private final boolean compatible;
+
+    private final StringValueCodec textCodec = new StringValueCodec();
+
+    public BinaryValueCodec(boolean compatible) {
+        this.compatible = compatible;
+    }
+
+    @Override
+    public ValueEncoder encoder(Class<?> type) {
+        Class<?> t = ClassUtils.resolvePrimitiveIfNecessary(type);
+        if (t == Long.class || t == Integer.class || t == Short.class || t == Byte.class) {
+            return value -> encodeVarLong(((Number) value).longValue());
+        }
+        if (t == Double.class) {
+            return value -> tagged(TAG_DOUBLE, Bytes.toBytes(((Double) value).doubleValue()));
+        }
+        if (t == Float.class) {
+            return value -> tagged(TAG_FLOAT, Bytes.toBytes(((Float) value).floatValue()));
+        }
+        if (t == Boolean.class) {
+            return value -> (Boolean) value ? TRUE : FALSE;
+        }
+        if (Date.class.isAssignableFrom(t)) {
+            return value -> encodeVarLong(((Date) value).getTime());
+        }
+        if (t == String.class) {
+            return value -> {
+                String text = (String) value;
+                if (!StringUtils.hasText(text)) return null;
+                byte[] bytes = Bytes.toBytes(text);
+                return isTag(bytes[0]) ? tagged(TAG_STRING, bytes) : bytes;
+            };
+        }
+        return textCodec.encoder(type);
+    }
+
+    @Override
+    public ValueDecoder decoder(Class<?> type) {
+        Class<?> t = ClassUtils.resolvePrimitiveIfNecessary(type);
+        ValueDecoder text = textCodec.decoder(type);
+        if (t == String.class) {
+            return (b, o, l) -> l > 0 && b[o] == TAG_STRING ? Bytes.toString(b, o + 1, l - 1) : Bytes.toString(b, o, l);
+        }
+        if (t == Long.class) {
+            return integral(text, Long.MIN_VALUE, Long.MAX_VALUE, v -> v);
+        }
+        if (t == Integer.class) {
+            return integral(text, Integer.MIN_VALUE, Integer.MAX_VALUE, v -> (int) v);
+        }
+        if (t == Short.class) {
+            return integral(text, Short.MIN_VALUE, Short.MAX_VALUE, v -> (short) v);
+        }
+        if (t == Byte.class) {
+            return integral(text, Byte.MIN_VALUE, Byte.MAX_VALUE, v -> (byte) v);
+        }
+        if (t == Double.class) {
+            return (b, o, l) -> l == 9 && b[o] == TAG_DOUBLE ? Bytes.toDouble(b, o + 1) : legacy(text, b, o, l);
+        }
+        if (t == Float.class) {
+            return (b, o, l) -> l == 5 && b[o] == TAG_FLOAT ? Bytes.toFloat(b, o + 1) : legacy(text, b, o, l);
+        }
+        if (t == Boolean.class) {
+            return (b, o, l) -> {
+                if (l == 1 && b[o] == TAG_TRUE) return Boolean.TRUE;
+                if (l == 1 && b[o] == TAG_FALSE) return Boolean.FALSE;
+                return legacy(text, b, o, l);
+            };
+        }
+        if (Date.class.isAssignableFrom(t)) {
+            return (b, o, l) -> l > 0 && b[o] == TAG_VARINT ? new Date(decodeVarLong(b, o + 1, l - 1)) : legacy(text, b, o, l);
+        }
+        return text;
+    }
+
+    /**
+     * 把一个值按属性类型编码,用于构造值过滤器的比较值
+     */
+    public byte[] encode(Object value) {
+        return encoder(value.getClass()).encode(value);
+    }
+
+    private ValueDecoder integral(ValueDecoder text, long min, long max, LongFunction<Object> narrow) {
+        return (b, o, l) -> {
+            if (l > 0 && b[o] == TAG_VARINT) {
+                long value = decodeVarLong(b, o + 1, l - 1);
+                if (value < min || value > max) {
+                    throw new NumberFormatException("Value out of range: " + value);
+                }
+                return narrow.apply(value);
+            }
+            return legacy(text, b, o, l);
+        };
+    }
+
+    private Object legacy(ValueDecoder text, byte[] bytes, int offset, int length) {
+        if (!compatible && length > 0) {
+            throw new IllegalArgumentException("Not a binary encoded value: " + Bytes.toStringBinary(bytes, offset, length));
+        }
+        return text.decode(bytes, offset, length);
+    }
+
+    private static boolean isTag(byte b) {
+        return b > 0 && b <= TAG_MAX;
+    }
+
+    private static byte[] tagged(byte tag, byte[] bytes) {
+        byte[] result = new byte[bytes.length + 1];
+        result[0] = tag;
+        System.arraycopy(bytes, 0, result, 1, bytes.length);
+        return result;
+    }
+
+    /**
+     * 标记 + zigzag varint,绝对值小的数(包括负数)只占1~2字节
+     */
+    static byte[] encodeVarLong(long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        byte[] buffer = new byte[11];
+        buffer[0] = TAG_VARINT;
+        int pos = 1;
+        while ((zigzag & ~0x7FL) != 0) {
+            buffer[pos++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        buffer[pos++] = (byte) zigzag;
+        byte[] result = new byte[pos];
+        System.arraycopy(buffer, 0, result, 0, pos);
+        return result;
+    }
+
+    static long decodeVarLong(byte[] bytes, int offset, int length) {
+        long zigzag = 0;
+        int shift = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = bytes[i];
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            shift += 7;
+        }
+        throw new IllegalArgumentException("Malformed varint: " + Bytes.toStringBinary(bytes, offset, length));
+    }
+}
@@ -0,0 +1,23 @@
+package cn.dc.hbase_learn.codec;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.springframework.util.StringUtils;
+
+/**
+ * 原有的文本编码:写入value.toString()的UTF-8字节,空白值不写
+ */
+public class StringValueCodec implements ValueCodec {
+
+    @Override
+    public ValueEncoder encoder(Class<?> type) {
+        return value -> {
+            String text = value.toString();
+            return StringUtils.hasText(text) ? Bytes.toBytes(text) : null;
+        };
+    }
+
+    @Override
+    public ValueDecoder decoder(Class<?> type) {
+        return ValueDecoders.forType(type);
+    }
+}
@@ -0,0 +1,12 @@
+package cn.dc.hbase_learn.codec;
+
+/**
+ * 属性值与cell value之间的编解码策略,按属性类型给出编码器和解码器,
+ * PojoMapper构建时为每个属性取一次,读写时不再判断类型
+ */
+public interface ValueCodec {
+
+    ValueEncoder encoder(Class<?> type);
+
+    ValueDecoder decoder(Class<?> type);
+}
@@ -0,0 +1,16 @@
+package cn.dc.hbase_learn.codec;
+
+/**
+ * 把cell value的一段字节直接解码成属性类型的值
+ */
+@FunctionalInterface
+public interface ValueDecoder {
+
+    /**
+     * @param bytes  cell的backing array
+     * @param offset value起始位置
+     * @param length value长度
+     * @return 解码后的值, 返回null表示不设置该属性
+     */
+    Object decode(byte[] bytes, int offset, int length);
+}
@@ -0,0 +1,104 @@
+package cn.dc.hbase_learn.codec;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.util.ClassUtils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * 按属性类型选择解码器
+ * <p>
+ * 现有数据都是createPro按toString()写入的UTF-8文本,整数和布尔值直接在字节上解析,
+ * 不经过String;其他类型才转成String交给ConversionService
+ */
+public final class ValueDecoders {
+
+    private ValueDecoders() {
+    }
+
+    public static ValueDecoder forType(Class<?> type) {
+        Class<?> t = ClassUtils.resolvePrimitiveIfNecessary(type);
+        if (t == String.class) {
+            return Bytes::toString;
+        }
+        if (t == Integer.class) {
+            return (b, o, l) -> l == 0 ? null : (int) parseLong(b, o, l, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+        if (t == Long.class) {
+            return (b, o, l) -> l == 0 ? null : parseLong(b, o, l, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+        if (t == Short.class) {
+            return (b, o, l) -> l == 0 ? null : (short) parseLong(b, o, l, Short.MIN_VALUE, Short.MAX_VALUE);
+        }
+        if (t == Byte.class) {
+            return (b, o, l) -> l == 0 ? null : (byte) parseLong(b, o, l, Byte.MIN_VALUE, Byte.MAX_VALUE);
+        }
+        if (t == Boolean.class) {
+            return ValueDecoders::parseBoolean;
+        }
+        if (t == Double.class) {
+            return (b, o, l) -> l == 0 ? null : Double.parseDouble(Bytes.toString(b, o, l));
+        }
+        if (t == Float.class) {
+            return (b, o, l) -> l == 0 ? null : Float.parseFloat(Bytes.toString(b, o, l));
+        }
+        if (t == Character.class) {
+            return (b, o, l) -> l == 0 ? null : Bytes.toString(b, o, l).charAt(0);
+        }
+        if (t == BigDecimal.class) {
+            return (b, o, l) -> l == 0 ? null : new BigDecimal(Bytes.toString(b, o, l));
+        }
+        if (t == BigInteger.class) {
+            return (b, o, l) -> l == 0 ? null : new BigInteger(Bytes.toString(b, o, l));
+        }
+        //日期、枚举等其他类型走spring的类型转换
+        ConversionService conversionService = DefaultConversionService.getSharedInstance();
+        return (b, o, l) -> l == 0 ? null : conversionService.convert(Bytes.toString(b, o, l), t);
+    }
+
+    /**
+     * 在UTF-8字节上直接解析十进制整数,格式不规范时退回Long.parseLong以保持原有的容错和报错
+     */
+    static long parseLong(byte[] bytes, int offset, int length, long min, long max) {
+        int i = offset;
+        int end = offset + length;
+        boolean negative = false;
+        if (bytes[i] == '-' || bytes[i] == '+') {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            return checkRange(Long.parseLong(Bytes.toString(bytes, offset, length).trim()), min, max, bytes, offset, length);
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return checkRange(Long.parseLong(Bytes.toString(bytes, offset, length).trim()), min, max, bytes, offset, length);
+            }
+            value = value * 10 + digit;
+        }
+        return checkRange(negative ? -value : value, min, max, bytes, offset, length);
+    }
+
+    private static long checkRange(long value, long min, long max, byte[] bytes, int offset, int length) {
+        if (value < min || value > max) {
+            throw new NumberFormatException("Value out of range. Value:\"" + Bytes.toString(bytes, offset, length) + "\"");
+        }
+        return value;
+    }
+
+    private static final byte[] TRUE = Bytes.toBytes("true");
+    private static final byte[] FALSE = Bytes.toBytes("false");
+
+    private static Object parseBoolean(byte[] bytes, int offset, int length) {
+        if (length == 0) return null;
+        if (Bytes.equals(TRUE, 0, TRUE.length, bytes, offset, length)) return Boolean.TRUE;
+        if (Bytes.equals(FALSE, 0, FALSE.length, bytes, offset, length)) return Boolean.FALSE;
+        //兼容1/0、yes/no、on/off等写法
+        return DefaultConversionService.getSharedInstance().convert(Bytes.toString(bytes, offset, length), Boolean.class);
+    }
+}
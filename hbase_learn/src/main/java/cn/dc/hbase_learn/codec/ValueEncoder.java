@@ -0,0 +1,14 @@
+package cn.dc.hbase_learn.codec;
+
+/**
+ * 把属性值编码成cell value
+ */
+@FunctionalInterface
+public interface ValueEncoder {
+
+    /**
+     * @param value 属性值,不为null
+     * @return 编码后的字节, 返回null表示不写入该属性
+     */
+    byte[] encode(Object value);
+}
@@ -1,13 +1,39 @@
 package cn.dc.hbase_learn.config;
 
+import cn.dc.hbase_learn.aggregate.HbaseAggregator;
+import cn.dc.hbase_learn.bulkload.HFileBulkLoader;
+import cn.dc.hbase_learn.cache.RowCache;
+import cn.dc.hbase_learn.codec.BinaryValueCodec;
+import cn.dc.hbase_learn.codec.StringValueCodec;
+import cn.dc.hbase_learn.codec.ValueCodec;
+import cn.dc.hbase_learn.index.SecondaryIndexManager;
+import cn.dc.hbase_learn.mapper.PojoMapperRegistry;
+import cn.dc.hbase_learn.metrics.HbaseClientMeterBinder;
+import cn.dc.hbase_learn.metrics.HbaseMetrics;
+import cn.dc.hbase_learn.pool.HbaseConnectionPool;
+import cn.dc.hbase_learn.pool.PooledTableFactory;
+import cn.dc.hbase_learn.rowkey.RowKeyStrategyRegistry;
+import cn.dc.hbase_learn.scan.ParallelScanner;
+import cn.dc.hbase_learn.scan.ScanProfiles;
+import cn.dc.hbase_learn.utils.AsyncHbaseTemplateUtil;
 import cn.dc.hbase_learn.utils.HbaseTemplateUtil;
+import cn.dc.hbase_learn.writer.HbaseBulkWriter;
+import cn.dc.hbase_learn.writer.WriteFailureListener;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.coprocessor.AggregationClient;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.data.hadoop.hbase.HbaseTemplate;
 
+import java.time.Duration;
+
 @org.springframework.context.annotation.Configuration
+@EnableConfigurationProperties({HbaseCacheProperties.class, HbaseIndexProperties.class, HbaseRowKeyProperties.class,
+        HbaseScanProperties.class})
 public class HBaseConfiguration {
 
     @Value("${hbase.zookeeper.quorum}")
@@ -19,6 +45,48 @@ public class HBaseConfiguration {
     @Value("${zookeeper.znode.parent}")
     private String znodeParent;
 
+    @Value("${hbase.connection.pool-size:1}")
+    private int connectionPoolSize;
+
+    @Value("${hbase.scan.parallelism:8}")
+    private int scanParallelism;
+
+    @Value("${hbase.codec.type:string}")
+    private String codecType;
+
+    @Value("${hbase.codec.compatible:true}")
+    private boolean codecCompatible;
+
+    @Value("${hbase.writer.buffer-size:4194304}")
+    private long writeBufferSize;
+
+    @Value("${hbase.writer.flush-interval-ms:1000}")
+    private long flushIntervalMillis;
+
+    @Value("${hbase.bulkload.staging-dir:/tmp/hbase-bulkload}")
+    private String bulkLoadStagingDir;
+
+    @Value("${hbase.bulkload.spill-dir:}")
+    private String bulkLoadSpillDir;
+
+    @Value("${hbase.bulkload.buffer-size:268435456}")
+    private long bulkLoadBufferSize;
+
+    @Value("${hbase.async.threads:16}")
+    private int asyncThreads;
+
+    @Value("${hbase.async.max-in-flight:256}")
+    private int asyncMaxInFlight;
+
+    @Value("${hbase.async.timeout-ms:3000}")
+    private long asyncTimeoutMillis;
+
+    @Value("${hbase.metrics.slow-threshold-ms:500}")
+    private long slowThresholdMillis;
+
+    @Value("${hbase.metrics.histogram:true}")
+    private boolean metricsHistogram;
+
     @Bean
     public Configuration getConf() {
         Configuration conf = new Configuration();
@@ -28,9 +96,118 @@ public class HBaseConfiguration {
         return conf;
     }
 
+    /*
+    共享连接池,启动时预热,容器关闭时释放
+     */
+    @Bean(initMethod = "init", destroyMethod = "close")
+    public HbaseConnectionPool getHbaseConnectionPool(@Autowired Configuration conf) {
+        return new HbaseConnectionPool(conf, connectionPoolSize);
+    }
+
+    @Bean
+    public HbaseTemplate getHbaseTemplate(@Autowired Configuration conf, @Autowired HbaseConnectionPool connectionPool) {
+        HbaseTemplate hbaseTemplate = new HbaseTemplate(conf);
+        hbaseTemplate.setTableFactory(new PooledTableFactory(connectionPool));
+        return hbaseTemplate;
+    }
+
+    /*
+    属性值编码:string为原有的toString文本,binary为带类型标记的二进制
+     */
+    @Bean
+    public ValueCodec getValueCodec() {
+        if ("binary".equalsIgnoreCase(codecType)) {
+            return new BinaryValueCodec(codecCompatible);
+        }
+        return new StringValueCodec();
+    }
+
+    /*
+    行到pojo的映射器缓存,每个Class只编译一次
+     */
+    @Bean
+    public PojoMapperRegistry getPojoMapperRegistry(@Autowired ValueCodec valueCodec) {
+        return new PojoMapperRegistry(valueCodec);
+    }
+
+    /*
+    getOneToClass/getOneToMap/getColumn的读缓存,hbase.cache.enabled开启
+     */
+    @Bean
+    public RowCache getRowCache(@Autowired HbaseCacheProperties cacheProperties) {
+        return new RowCache(cacheProperties);
+    }
+
+    /*
+    二级索引,hbase.index.tables声明索引列,启动时创建索引表
+     */
+    @Bean(initMethod = "init")
+    public SecondaryIndexManager getSecondaryIndexManager(@Autowired HbaseConnectionPool connectionPool,
+                                                          @Autowired HbaseIndexProperties indexProperties) {
+        return new SecondaryIndexManager(connectionPool, indexProperties);
+    }
+
+    /*
+    每张表的rowkey策略,hbase.rowkey.tables配置,未配置的表原样使用rowkey
+     */
+    @Bean
+    public RowKeyStrategyRegistry getRowKeyStrategyRegistry(@Autowired HbaseRowKeyProperties rowKeyProperties) {
+        return new RowKeyStrategyRegistry(rowKeyProperties.getTables());
+    }
+
+    /*
+    按region并行scan,线程池有界
+     */
+    @Bean(destroyMethod = "close")
+    public ParallelScanner getParallelScanner(@Autowired HbaseConnectionPool connectionPool) {
+        return new ParallelScanner(connectionPool, scanParallelism);
+    }
+
+    /*
+    按名字配置的scan参数,hbase.scan.profiles
+     */
+    @Bean
+    public ScanProfiles getScanProfiles(@Autowired HbaseScanProperties scanProperties) {
+        return new ScanProfiles(scanProperties);
+    }
+
+    /*
+    基于BufferedMutator的异步批量写入,失败回调可以通过WriteFailureListener bean自定义
+     */
+    @Bean(destroyMethod = "close")
+    public HbaseBulkWriter getHbaseBulkWriter(@Autowired HbaseConnectionPool connectionPool,
+                                              @Autowired PojoMapperRegistry mapperRegistry,
+                                              @Autowired RowCache rowCache,
+                                              @Autowired SecondaryIndexManager indexManager,
+                                              @Autowired RowKeyStrategyRegistry rowKeys,
+                                              ObjectProvider<WriteFailureListener> failureListener) {
+        return new HbaseBulkWriter(connectionPool, mapperRegistry, rowCache, indexManager, rowKeys, writeBufferSize,
+                flushIntervalMillis, failureListener.getIfAvailable());
+    }
+
+    /*
+    count/sum/min/max在region server上计算,表需要注册AggregateImplementation
+    AggregationClient会自己建一个连接,整个应用共用一个
+     */
+    @Bean(destroyMethod = "close")
+    public HbaseAggregator getHbaseAggregator(@Autowired Configuration conf,
+                                              @Autowired HbaseConnectionPool connectionPool,
+                                              @Autowired RowKeyStrategyRegistry rowKeys) {
+        return new HbaseAggregator(connectionPool, new AggregationClient(conf), rowKeys);
+    }
+
+    /*
+    生成HFile后直接加载的批量导入,staging-dir在集群上需要是hdfs路径
+     */
     @Bean
-    public HbaseTemplate getHbaseTemplate(@Autowired Configuration conf) {
-        return new HbaseTemplate(conf);
+    public HFileBulkLoader getHFileBulkLoader(@Autowired Configuration conf,
+                                              @Autowired HbaseConnectionPool connectionPool,
+                                              @Autowired PojoMapperRegistry mapperRegistry,
+                                              @Autowired SecondaryIndexManager indexManager,
+                                              @Autowired RowKeyStrategyRegistry rowKeys,
+                                              @Autowired RowCache rowCache) {
+        return new HFileBulkLoader(conf, connectionPool, mapperRegistry, indexManager, rowKeys, rowCache,
+                bulkLoadStagingDir, bulkLoadSpillDir, bulkLoadBufferSize);
     }
 
     /*
@@ -40,5 +217,31 @@ public class HBaseConfiguration {
     public HbaseTemplateUtil getHbaseTemplateUtil(){
         return new HbaseTemplateUtil();
     }
-}
 
+    /*
+    异步版本,有界io线程池,限制在途请求数,请求超时
+     */
+    @Bean(destroyMethod = "close")
+    public AsyncHbaseTemplateUtil getAsyncHbaseTemplateUtil(@Autowired HbaseTemplateUtil hbaseTemplateUtil) {
+        return new AsyncHbaseTemplateUtil(hbaseTemplateUtil, asyncThreads, asyncMaxInFlight, asyncTimeoutMillis);
+    }
+
+    /*
+    HbaseTemplateUtil各操作的耗时、行数、错误数,MeterRegistry由actuator提供
+     */
+    @Bean
+    public HbaseMetrics getHbaseMetrics(@Autowired MeterRegistry meterRegistry) {
+        return new HbaseMetrics(meterRegistry, Duration.ofMillis(slowThresholdMillis), metricsHistogram);
+    }
+
+    /*
+    连接池、异步写入器、异步访问层、行缓存的状态
+     */
+    @Bean
+    public HbaseClientMeterBinder getHbaseClientMeterBinder(@Autowired HbaseConnectionPool connectionPool,
+                                                            @Autowired HbaseBulkWriter bulkWriter,
+                                                            @Autowired AsyncHbaseTemplateUtil asyncUtil,
+                                                            @Autowired RowCache rowCache) {
+        return new HbaseClientMeterBinder(connectionPool, bulkWriter, asyncUtil, rowCache);
+    }
+}
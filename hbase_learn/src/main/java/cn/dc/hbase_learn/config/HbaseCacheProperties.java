@@ -0,0 +1,36 @@
+package cn.dc.hbase_learn.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 读缓存配置,hbase.cache.*
+ */
+@Data
+@ConfigurationProperties(prefix = "hbase.cache")
+public class HbaseCacheProperties {
+
+    /*默认关闭*/
+    private boolean enabled = false;
+
+    /*未单独配置的表使用的内存预算,字节*/
+    private long maxBytes = 64 * 1024 * 1024;
+
+    /*缓存有效期*/
+    private Duration ttl = Duration.ofSeconds(60);
+
+    /*按表名单独配置,未配置的项取上面的默认值,maxBytes为0表示该表不缓存*/
+    private Map<String, Table> tables = new HashMap<>();
+
+    @Data
+    public static class Table {
+
+        private Long maxBytes;
+
+        private Duration ttl;
+    }
+}
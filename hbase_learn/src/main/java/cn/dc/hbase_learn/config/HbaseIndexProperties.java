@@ -0,0 +1,26 @@
+package cn.dc.hbase_learn.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 二级索引配置,hbase.index.*
+ */
+@Data
+@ConfigurationProperties(prefix = "hbase.index")
+public class HbaseIndexProperties {
+
+    /*按表名声明索引列,格式 列族:列名*/
+    private Map<String, List<String>> tables = new HashMap<>();
+
+    /*启动时索引表不存在则创建*/
+    private boolean createTables = true;
+
+    /*reconcile时比这个时间新的索引项不删除,避免和正在进行的写入冲突*/
+    private Duration reconcileGracePeriod = Duration.ofMinutes(5);
+}
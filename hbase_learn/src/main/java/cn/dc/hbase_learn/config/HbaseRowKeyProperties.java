@@ -0,0 +1,18 @@
+package cn.dc.hbase_learn.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * rowkey策略配置,hbase.rowkey.*
+ */
+@Data
+@ConfigurationProperties(prefix = "hbase.rowkey")
+public class HbaseRowKeyProperties {
+
+    /*表名 -> identity / salt:N / hash:K*/
+    private Map<String, String> tables = new HashMap<>();
+}
@@ -0,0 +1,25 @@
+package cn.dc.hbase_learn.config;
+
+import cn.dc.hbase_learn.scan.ScanProfile;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * scan参数配置,hbase.scan.*
+ */
+@Data
+@ConfigurationProperties(prefix = "hbase.scan")
+public class HbaseScanProperties {
+
+    /*按名字配置的scan参数,调用时按名字选择*/
+    private Map<String, ScanProfile> profiles = new LinkedHashMap<>();
+
+    /*没有指定profile、限定了rowkey范围的scan使用的profile*/
+    private String boundedProfile = "range-scan";
+
+    /*没有指定profile、全表的scan使用的profile*/
+    private String unboundedProfile = "analytic-full-scan";
+}
@@ -0,0 +1,99 @@
+package cn.dc.hbase_learn.index;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.Arrays;
+
+/**
+ * 一个二级索引:数据表的某一列 -> 索引表
+ * <p>
+ * 索引表名为 数据表_idx_列族_列名,rowkey为 列值 + 0x00 + 数据rowkey,
+ * 数据rowkey同时放在 i:r 列里,查询时按 列值 + 0x00 做前缀scan。
+ * 列值本身含0x00时前缀可能误匹配,查询时会回数据表校验,不影响结果。
+ */
+public final class IndexDefinition {
+
+    public static final byte[] FAMILY = Bytes.toBytes("i");
+
+    public static final byte[] ROWKEY_QUALIFIER = Bytes.toBytes("r");
+
+    private static final byte SEPARATOR = 0;
+
+    private final String tableName;
+
+    private final byte[] family;
+
+    private final byte[] qualifier;
+
+    private final TableName indexTableName;
+
+    public IndexDefinition(String tableName, String family, String qualifier) {
+        this.tableName = tableName;
+        this.family = Bytes.toBytes(family);
+        this.qualifier = Bytes.toBytes(qualifier);
+        this.indexTableName = TableName.valueOf(tableName + "_idx_" + family + "_" + qualifier);
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public byte[] getFamily() {
+        return family;
+    }
+
+    public byte[] getQualifier() {
+        return qualifier;
+    }
+
+    public TableName getIndexTableName() {
+        return indexTableName;
+    }
+
+    public boolean covers(byte[] family, byte[] qualifier) {
+        return Bytes.equals(this.family, family) && Bytes.equals(this.qualifier, qualifier);
+    }
+
+    /**
+     * 索引rowkey:列值 + 0x00 + 数据rowkey
+     */
+    public static byte[] indexRowkey(byte[] value, byte[] rowkey) {
+        byte[] key = new byte[value.length + 1 + rowkey.length];
+        System.arraycopy(value, 0, key, 0, value.length);
+        key[value.length] = SEPARATOR;
+        System.arraycopy(rowkey, 0, key, value.length + 1, rowkey.length);
+        return key;
+    }
+
+    /**
+     * 某个列值对应的索引区间起点(包含)
+     */
+    public static byte[] startRow(byte[] value) {
+        byte[] start = Arrays.copyOf(value, value.length + 1);
+        start[value.length] = SEPARATOR;
+        return start;
+    }
+
+    /**
+     * 某个列值对应的索引区间终点(不包含)
+     */
+    public static byte[] stopRow(byte[] value) {
+        byte[] stop = Arrays.copyOf(value, value.length + 1);
+        stop[value.length] = SEPARATOR + 1;
+        return stop;
+    }
+
+    /**
+     * 从索引rowkey中取出列值,dataRowkey是同一行 i:r 列里的数据rowkey
+     */
+    public static byte[] valueOf(byte[] indexRowkey, byte[] dataRowkey) {
+        int length = indexRowkey.length - dataRowkey.length - 1;
+        return length < 0 ? null : Arrays.copyOf(indexRowkey, length);
+    }
+
+    @Override
+    public String toString() {
+        return tableName + "[" + Bytes.toString(family) + ":" + Bytes.toString(qualifier) + "] -> " + indexTableName;
+    }
+}
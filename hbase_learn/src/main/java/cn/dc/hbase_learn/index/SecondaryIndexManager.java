@@ -0,0 +1,380 @@
+package cn.dc.hbase_learn.index;
+
+import cn.dc.hbase_learn.config.HbaseIndexProperties;
+import cn.dc.hbase_learn.pool.HbaseConnectionPool;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.CompareFilter;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 二级索引管理:声明索引、写入时维护索引、查询时按索引定位、离线修复
+ * <p>
+ * 写入顺序是先写索引再写数据,所以索引只会多不会少:列值被修改或行被删除后,旧索引项会留下来,
+ * 查询时回数据表用原过滤条件校验,多余的索引项不会出现在结果里,由reconcile定期清理。
+ * <p>
+ * 只有 EQUAL + BinaryComparator 且 filterIfMissing=true、latestVersionOnly=true 的
+ * SingleColumnValueFilter(单独使用或在MUST_PASS_ALL的FilterList里)会走索引。
+ * filterIfMissing为false时没有该列的行也满足条件,索引查不到这些行,仍然走全表scan。
+ * <p>
+ * 新声明的索引在第一次reconcile完成之前是不完整的(已有数据还没有索引项),这期间查询仍然走全表scan。
+ * 完成状态记在索引表的表属性里(INDEX_READY),重启后不需要重新reconcile。
+ */
+public class SecondaryIndexManager {
+
+    private static final Logger log = LoggerFactory.getLogger(SecondaryIndexManager.class);
+
+    /*reconcile每批处理的行数*/
+    private static final int BATCH_SIZE = 1000;
+
+    private final HbaseConnectionPool connectionPool;
+
+    private final HbaseIndexProperties properties;
+
+    /*索引表的表属性,reconcile完成后设为true*/
+    static final String READY_KEY = "INDEX_READY";
+
+    private final Map<String, List<IndexDefinition>> indexes = new ConcurrentHashMap<>();
+
+    /*已经完整、可以用于查询的索引表*/
+    private final Set<TableName> ready = ConcurrentHashMap.newKeySet();
+
+    public SecondaryIndexManager(HbaseConnectionPool connectionPool, HbaseIndexProperties properties) {
+        this.connectionPool = connectionPool;
+        this.properties = properties;
+    }
+
+    /**
+     * 注册配置文件中声明的索引
+     */
+    public void init() throws IOException {
+        for (Map.Entry<String, List<String>> entry : properties.getTables().entrySet()) {
+            for (String column : entry.getValue()) {
+                int colon = column.indexOf(':');
+                if (colon <= 0) {
+                    throw new IllegalArgumentException("index column must be family:qualifier, got " + column);
+                }
+                declare(entry.getKey(), column.substring(0, colon), column.substring(colon + 1));
+            }
+        }
+    }
+
+    /**
+     * 声明一个索引,之后的写入会维护索引;索引表里没有完成标记时,要调用reconcile补建已有数据的索引,
+     * 完成之前查询不走这个索引
+     */
+    public IndexDefinition declare(String tableName, String family, String qualifier) throws IOException {
+        IndexDefinition definition = new IndexDefinition(tableName, family, qualifier);
+        if (properties.isCreateTables()) {
+            createIndexTable(definition);
+        }
+        List<IndexDefinition> definitions = indexes.computeIfAbsent(tableName, k -> new CopyOnWriteArrayList<>());
+        for (IndexDefinition existing : definitions) {
+            if (existing.covers(definition.getFamily(), definition.getQualifier())) {
+                return existing;
+            }
+        }
+        definitions.add(definition);
+        if (readReady(definition)) {
+            ready.add(definition.getIndexTableName());
+            log.info("declared secondary index {}", definition);
+        } else {
+            log.warn("declared secondary index {}, not usable for queries until reconcile completes", definition);
+        }
+        return definition;
+    }
+
+    /**
+     * 索引是否完整,只有完整的索引会用于查询
+     */
+    public boolean isReady(IndexDefinition definition) {
+        return ready.contains(definition.getIndexTableName());
+    }
+
+    private boolean readReady(IndexDefinition definition) throws IOException {
+        try (Admin admin = connectionPool.borrow().getAdmin()) {
+            if (!admin.tableExists(definition.getIndexTableName())) {
+                return false;
+            }
+            return Boolean.parseBoolean(admin.getTableDescriptor(definition.getIndexTableName()).getValue(READY_KEY));
+        }
+    }
+
+    /*在索引表的表属性里记录完成状态*/
+    private void markReady(IndexDefinition definition) throws IOException {
+        if (isReady(definition)) return;
+        try (Admin admin = connectionPool.borrow().getAdmin()) {
+            HTableDescriptor descriptor = admin.getTableDescriptor(definition.getIndexTableName());
+            if (!Boolean.parseBoolean(descriptor.getValue(READY_KEY))) {
+                descriptor.setValue(READY_KEY, Boolean.TRUE.toString());
+                admin.modifyTable(definition.getIndexTableName(), descriptor);
+            }
+        }
+        ready.add(definition.getIndexTableName());
+    }
+
+    public List<IndexDefinition> getIndexes(String tableName) {
+        List<IndexDefinition> definitions = indexes.get(tableName);
+        return definitions == null ? Collections.emptyList() : definitions;
+    }
+
+    private void createIndexTable(IndexDefinition definition) throws IOException {
+        try (Admin admin = connectionPool.borrow().getAdmin()) {
+            if (!admin.tableExists(definition.getIndexTableName())) {
+                HTableDescriptor descriptor = new HTableDescriptor(definition.getIndexTableName());
+                descriptor.addFamily(new HColumnDescriptor(IndexDefinition.FAMILY));
+                admin.createTable(descriptor);
+            }
+        }
+    }
+
+    /**
+     * 根据数据表的put生成索引表的put,按索引表分组,没有索引列时返回空map
+     */
+    public Map<TableName, List<Put>> indexPuts(String tableName, List<? extends Put> puts) {
+        List<IndexDefinition> definitions = indexes.get(tableName);
+        if (definitions == null || definitions.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<TableName, List<Put>> result = new HashMap<>();
+        for (Put put : puts) {
+            for (IndexDefinition definition : definitions) {
+                for (Cell cell : put.get(definition.getFamily(), definition.getQualifier())) {
+                    result.computeIfAbsent(definition.getIndexTableName(), k -> new ArrayList<>())
+                            .add(indexPut(CellUtil.cloneValue(cell), put.getRow()));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Put indexPut(byte[] value, byte[] rowkey) {
+        Put put = new Put(IndexDefinition.indexRowkey(value, rowkey));
+        put.addColumn(IndexDefinition.FAMILY, IndexDefinition.ROWKEY_QUALIFIER, rowkey);
+        return put;
+    }
+
+    /**
+     * 同步写入索引,要在写数据之前调用
+     */
+    public void writeIndex(String tableName, List<? extends Put> puts) throws IOException {
+        for (Map.Entry<TableName, List<Put>> entry : indexPuts(tableName, puts).entrySet()) {
+            try (Table table = connectionPool.borrow().getTable(entry.getKey())) {
+                table.put(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 过滤条件能否走索引(索引已完整),能走时返回索引命中的候选rowkey(按rowkey排序),否则返回null
+     * 候选rowkey可能包含过期的索引项,调用方需要用原过滤条件回表校验
+     */
+    public List<byte[]> lookup(String tableName, Filter filter) throws IOException {
+        List<IndexDefinition> definitions = indexes.get(tableName);
+        if (definitions == null || definitions.isEmpty()) {
+            return null;
+        }
+        for (SingleColumnValueFilter candidate : equalityFilters(filter)) {
+            for (IndexDefinition definition : definitions) {
+                if (definition.covers(candidate.getFamily(), candidate.getQualifier()) && isReady(definition)) {
+                    return lookup(definition, candidate.getComparator().getValue());
+                }
+            }
+        }
+        return null;
+    }
+
+    private List<byte[]> lookup(IndexDefinition definition, byte[] value) throws IOException {
+        Scan scan = new Scan(IndexDefinition.startRow(value), IndexDefinition.stopRow(value));
+        scan.addColumn(IndexDefinition.FAMILY, IndexDefinition.ROWKEY_QUALIFIER);
+        scan.setCaching(BATCH_SIZE);
+        List<byte[]> rowkeys = new ArrayList<>();
+        try (Table table = connectionPool.borrow().getTable(definition.getIndexTableName());
+             ResultScanner scanner = table.getScanner(scan)) {
+            for (Result result : scanner) {
+                byte[] rowkey = result.getValue(IndexDefinition.FAMILY, IndexDefinition.ROWKEY_QUALIFIER);
+                if (rowkey != null) {
+                    rowkeys.add(rowkey);
+                }
+            }
+        }
+        rowkeys.sort(Bytes.BYTES_COMPARATOR);
+        return rowkeys;
+    }
+
+    /*能用索引回答的等值条件,MUST_PASS_ONE的FilterList里的条件不能单独使用*/
+    private static List<SingleColumnValueFilter> equalityFilters(Filter filter) {
+        List<SingleColumnValueFilter> result = new ArrayList<>();
+        if (filter instanceof SingleColumnValueFilter) {
+            SingleColumnValueFilter scvf = (SingleColumnValueFilter) filter;
+            if (scvf.getOperator() == CompareFilter.CompareOp.EQUAL
+                    && scvf.getComparator() instanceof BinaryComparator
+                    && scvf.getFilterIfMissing() && scvf.getLatestVersionOnly()) {
+                result.add(scvf);
+            }
+        } else if (filter instanceof FilterList
+                && ((FilterList) filter).getOperator() == FilterList.Operator.MUST_PASS_ALL) {
+            for (Filter child : ((FilterList) filter).getFilters()) {
+                result.addAll(equalityFilters(child));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 修复一个索引:补建缺失的索引项,删除数据已经不匹配的索引项
+     * 全表扫描数据表和索引表,应在低峰期由定时任务调用;第一次完成后索引才用于查询
+     */
+    public ReconcileResult reconcile(IndexDefinition definition) throws IOException {
+        ReconcileResult result = new ReconcileResult(definition);
+        try (Table dataTable = connectionPool.borrow().getTable(TableName.valueOf(definition.getTableName()));
+             Table indexTable = connectionPool.borrow().getTable(definition.getIndexTableName())) {
+            rebuild(definition, dataTable, indexTable, result);
+            //声明之后的写入都会维护索引,补建完成后索引就是完整的
+            markReady(definition);
+            removeStale(definition, dataTable, indexTable, result);
+        }
+        log.info("reconciled {}: indexed={}, removed={}", definition, result.getIndexed(), result.getRemoved());
+        return result;
+    }
+
+    /**
+     * 修复某张表的全部索引
+     */
+    public List<ReconcileResult> reconcile(String tableName) throws IOException {
+        List<ReconcileResult> results = new ArrayList<>();
+        for (IndexDefinition definition : getIndexes(tableName)) {
+            results.add(reconcile(definition));
+        }
+        return results;
+    }
+
+    /*扫描数据表,重写所有索引项,重复写入是幂等的*/
+    private void rebuild(IndexDefinition definition, Table dataTable, Table indexTable, ReconcileResult result) throws IOException {
+        Scan scan = new Scan();
+        scan.addColumn(definition.getFamily(), definition.getQualifier());
+        scan.setCaching(BATCH_SIZE);
+        scan.setCacheBlocks(false);
+        List<Put> puts = new ArrayList<>(BATCH_SIZE);
+        try (ResultScanner scanner = dataTable.getScanner(scan)) {
+            for (Result row : scanner) {
+                byte[] value = row.getValue(definition.getFamily(), definition.getQualifier());
+                if (value == null) continue;
+                puts.add(indexPut(value, row.getRow()));
+                if (puts.size() >= BATCH_SIZE) {
+                    indexTable.put(puts);
+                    result.indexed += puts.size();
+                    puts = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+        }
+        if (!puts.isEmpty()) {
+            indexTable.put(puts);
+            result.indexed += puts.size();
+        }
+    }
+
+    /*扫描索引表,回表核对列值,不一致且超过宽限期的索引项删除*/
+    private void removeStale(IndexDefinition definition, Table dataTable, Table indexTable, ReconcileResult result) throws IOException {
+        long deadline = System.currentTimeMillis() - properties.getReconcileGracePeriod().toMillis();
+        Scan scan = new Scan();
+        scan.addColumn(IndexDefinition.FAMILY, IndexDefinition.ROWKEY_QUALIFIER);
+        scan.setCaching(BATCH_SIZE);
+        scan.setCacheBlocks(false);
+        List<Result> batch = new ArrayList<>(BATCH_SIZE);
+        try (ResultScanner scanner = indexTable.getScanner(scan)) {
+            for (Result entry : scanner) {
+                batch.add(entry);
+                if (batch.size() >= BATCH_SIZE) {
+                    removeStale(definition, dataTable, indexTable, batch, deadline, result);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            removeStale(definition, dataTable, indexTable, batch, deadline, result);
+        }
+    }
+
+    private void removeStale(IndexDefinition definition, Table dataTable, Table indexTable, List<Result> entries,
+                             long deadline, ReconcileResult result) throws IOException {
+        List<Get> gets = new ArrayList<>(entries.size());
+        for (Result entry : entries) {
+            Get get = new Get(entry.getValue(IndexDefinition.FAMILY, IndexDefinition.ROWKEY_QUALIFIER));
+            get.addColumn(definition.getFamily(), definition.getQualifier());
+            gets.add(get);
+        }
+        Result[] rows = dataTable.get(gets);
+        List<Delete> deletes = new ArrayList<>();
+        for (int i = 0; i < rows.length; i++) {
+            Cell cell = entries.get(i).getColumnLatestCell(IndexDefinition.FAMILY, IndexDefinition.ROWKEY_QUALIFIER);
+            if (cell.getTimestamp() > deadline) continue;
+            byte[] indexedValue = IndexDefinition.valueOf(entries.get(i).getRow(), gets.get(i).getRow());
+            byte[] currentValue = rows[i].getValue(definition.getFamily(), definition.getQualifier());
+            if (currentValue == null || !Bytes.equals(indexedValue, currentValue)) {
+                deletes.add(new Delete(entries.get(i).getRow()));
+            }
+        }
+        if (!deletes.isEmpty()) {
+            result.removed += deletes.size();
+            indexTable.delete(deletes);
+        }
+    }
+
+    /**
+     * reconcile的统计
+     */
+    public static final class ReconcileResult {
+
+        private final IndexDefinition definition;
+
+        private long indexed;
+
+        private long removed;
+
+        ReconcileResult(IndexDefinition definition) {
+            this.definition = definition;
+        }
+
+        public IndexDefinition getDefinition() {
+            return definition;
+        }
+
+        /*重写的索引项数*/
+        public long getIndexed() {
+            return indexed;
+        }
+
+        /*删除的过期索引项数*/
+        public long getRemoved() {
+            return removed;
+        }
+    }
+}
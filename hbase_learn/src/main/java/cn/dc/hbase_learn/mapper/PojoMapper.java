@@ -0,0 +1,233 @@
+package cn.dc.hbase_learn.mapper;
+
+import cn.dc.hbase_learn.codec.ValueCodec;
+import cn.dc.hbase_learn.codec.ValueDecoder;
+import cn.dc.hbase_learn.codec.ValueEncoder;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.hadoop.hbase.RowMapper;
+import org.springframework.util.ReflectionUtils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 一行数据到pojo的映射器,每个Class只构建一次
+ * <p>
+ * 构造器、setter、getter都通过LambdaMetafactory生成为普通的函数对象,调用时和直接调用方法一样,
+ * 不再经过BeanWrapper按属性名反射,也不再经过fastjson的JSON字符串中转。
+ * qualifier对应pojo的属性名,pojo上没有的列直接忽略。
+ * 读取时qualifier通过字典树在cell的底层数组上匹配,值直接按offset/length解码,
+ * 映射一行已知列只创建pojo本身(以及String等属性值)。
+ */
+public class PojoMapper<T> implements RowMapper<T> {
+
+    private final Class<T> type;
+
+    private final Supplier<T> factory;
+
+    private final Map<String, PropertySetter> setters;
+
+    private final QualifierTrie<PropertySetter> setterTrie;
+
+    private final List<PropertyGetter> getters;
+
+    PojoMapper(Class<T> type, ValueCodec codec) {
+        this.type = type;
+        this.factory = compileFactory(type);
+        this.setters = new HashMap<>();
+        this.getters = new ArrayList<>();
+        for (PropertyDescriptor pd : BeanUtils.getPropertyDescriptors(type)) {
+            Method writeMethod = pd.getWriteMethod();
+            if (writeMethod != null) {
+                setters.put(pd.getName(), new PropertySetter(compileSetter(writeMethod), codec.decoder(pd.getPropertyType()),
+                        pd.getPropertyType().isPrimitive()));
+            }
+            Method readMethod = pd.getReadMethod();
+            //getClass()不写入
+            if (readMethod != null && !"class".equals(pd.getName())) {
+                getters.add(new PropertyGetter(Bytes.toBytes(pd.getName()), compileGetter(readMethod), codec.encoder(pd.getPropertyType())));
+            }
+        }
+        this.setterTrie = new QualifierTrie<>(setters);
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * 能映射的列名,即可写属性名
+     */
+    public Set<String> getColumnNames() {
+        return Collections.unmodifiableSet(setters.keySet());
+    }
+
+    /**
+     * 结果为空时返回null
+     */
+    @Override
+    public T mapRow(Result result, int rowNum) throws Exception {
+        if (result == null || result.isEmpty()) {
+            return null;
+        }
+        T pojo = factory.get();
+        for (Cell cell : result.rawCells()) {
+            PropertySetter setter = setterTrie.get(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength());
+            if (setter != null) {
+                setter.set(pojo, cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+            }
+        }
+        return pojo;
+    }
+
+    /**
+     * pojo转Put,属性名作为qualifier,值由ValueCodec编码,null值和编码器放弃的值不写
+     *
+     * @param pojo 必须是当前mapper的类型
+     */
+    public Put toPut(Object pojo, byte[] family, byte[] rowkey) {
+        Put put = new Put(rowkey);
+        for (PropertyGetter getter : getters) {
+            Object value = getter.getter.apply(pojo);
+            if (value == null) continue;
+            byte[] bytes = getter.encoder.encode(value);
+            if (bytes != null) {
+                put.addColumn(family, getter.qualifier, bytes);
+            }
+        }
+        return put;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Supplier<T> compileFactory(Class<T> type) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+            CallSite site = LambdaMetafactory.metafactory(lookup, "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    constructor,
+                    MethodType.methodType(type));
+            return (Supplier<T>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            //非public的类或构造器,退回反射
+            Constructor<T> constructor;
+            try {
+                constructor = type.getDeclaredConstructor();
+            } catch (NoSuchMethodException ex) {
+                throw new IllegalArgumentException(type.getName() + " has no default constructor", ex);
+            }
+            ReflectionUtils.makeAccessible(constructor);
+            return () -> BeanUtils.instantiateClass(constructor);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> compileSetter(Method writeMethod) {
+        Class<?> paramType = writeMethod.getParameterTypes()[0];
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle setter = lookup.unreflect(writeMethod);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+                    MethodType.methodType(BiConsumer.class),
+                    MethodType.methodType(void.class, Object.class, Object.class),
+                    setter,
+                    MethodType.methodType(void.class, writeMethod.getDeclaringClass(), MethodType.methodType(paramType).wrap().returnType()));
+            return (BiConsumer<Object, Object>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            ReflectionUtils.makeAccessible(writeMethod);
+            return (pojo, value) -> {
+                try {
+                    writeMethod.invoke(pojo, value);
+                } catch (ReflectiveOperationException ex) {
+                    throw new IllegalStateException("Could not set property by " + writeMethod, ex);
+                }
+            };
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> compileGetter(Method readMethod) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle getter = lookup.unreflect(readMethod);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                    MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class),
+                    getter,
+                    MethodType.methodType(MethodType.methodType(readMethod.getReturnType()).wrap().returnType(), readMethod.getDeclaringClass()));
+            return (Function<Object, Object>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            ReflectionUtils.makeAccessible(readMethod);
+            return pojo -> {
+                try {
+                    return readMethod.invoke(pojo);
+                } catch (ReflectiveOperationException ex) {
+                    throw new IllegalStateException("Could not get property by " + readMethod, ex);
+                }
+            };
+        }
+    }
+
+    /*
+    一个属性的getter、qualifier和编码器
+     */
+    private static final class PropertyGetter {
+
+        private final byte[] qualifier;
+
+        private final Function<Object, Object> getter;
+
+        private final ValueEncoder encoder;
+
+        PropertyGetter(byte[] qualifier, Function<Object, Object> getter, ValueEncoder encoder) {
+            this.qualifier = qualifier;
+            this.getter = getter;
+            this.encoder = encoder;
+        }
+    }
+
+    /*
+    一个属性的setter和对应的解码器
+     */
+    private static final class PropertySetter {
+
+        private final BiConsumer<Object, Object> setter;
+
+        private final ValueDecoder decoder;
+
+        private final boolean primitive;
+
+        PropertySetter(BiConsumer<Object, Object> setter, ValueDecoder decoder, boolean primitive) {
+            this.setter = setter;
+            this.decoder = decoder;
+            this.primitive = primitive;
+        }
+
+        void set(Object pojo, byte[] bytes, int offset, int length) {
+            Object value = decoder.decode(bytes, offset, length);
+            //基本类型不能设null,保持默认值
+            if (value == null && primitive) return;
+            setter.accept(pojo, value);
+        }
+    }
+}
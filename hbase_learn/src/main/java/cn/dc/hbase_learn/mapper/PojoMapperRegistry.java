@@ -0,0 +1,33 @@
+package cn.dc.hbase_learn.mapper;
+
+import cn.dc.hbase_learn.codec.ValueCodec;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按Class缓存PojoMapper,每个目标类型只编译一次
+ */
+public class PojoMapperRegistry {
+
+    private final ConcurrentMap<Class<?>, PojoMapper<?>> mappers = new ConcurrentHashMap<>();
+
+    private final ValueCodec codec;
+
+    public PojoMapperRegistry(ValueCodec codec) {
+        this.codec = codec;
+    }
+
+    public ValueCodec getCodec() {
+        return codec;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> PojoMapper<T> get(Class<T> type) {
+        PojoMapper<?> mapper = mappers.get(type);
+        if (mapper == null) {
+            mapper = mappers.computeIfAbsent(type, key -> new PojoMapper<>(type, codec));
+        }
+        return (PojoMapper<T>) mapper;
+    }
+}
@@ -0,0 +1,69 @@
+package cn.dc.hbase_learn.mapper;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 按qualifier字节查找属性的字典树,直接在cell的底层数组上按offset/length匹配,不创建String
+ * 构建后只读,线程安全。属性名一般很短、分叉很少,每层线性查找即可。
+ */
+final class QualifierTrie<V> {
+
+    private static final byte[] NO_LABELS = new byte[0];
+
+    private final Node<V> root = new Node<>();
+
+    QualifierTrie(Map<String, V> entries) {
+        entries.forEach((name, value) -> {
+            Node<V> node = root;
+            for (byte b : Bytes.toBytes(name)) {
+                node = node.childOrCreate(b);
+            }
+            node.value = value;
+        });
+    }
+
+    /**
+     * 查找qualifier对应的值,没有时返回null
+     */
+    V get(byte[] array, int offset, int length) {
+        Node<V> node = root;
+        for (int i = 0; i < length && node != null; i++) {
+            node = node.child(array[offset + i]);
+        }
+        return node == null ? null : node.value;
+    }
+
+    private static final class Node<V> {
+
+        private byte[] labels = NO_LABELS;
+
+        private Node<V>[] children;
+
+        private V value;
+
+        Node<V> child(byte label) {
+            byte[] labels = this.labels;
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == label) return children[i];
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        Node<V> childOrCreate(byte label) {
+            Node<V> child = child(label);
+            if (child == null) {
+                child = new Node<>();
+                int n = labels.length;
+                labels = Arrays.copyOf(labels, n + 1);
+                children = children == null ? new Node[1] : Arrays.copyOf(children, n + 1);
+                labels[n] = label;
+                children[n] = child;
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package cn.dc.hbase_learn.metrics;
+
+import cn.dc.hbase_learn.cache.RowCache;
+import cn.dc.hbase_learn.pool.HbaseConnectionPool;
+import cn.dc.hbase_learn.utils.AsyncHbaseTemplateUtil;
+import cn.dc.hbase_learn.writer.HbaseBulkWriter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接池、异步写入器、异步访问层、行缓存已有的计数器,注册为gauge和function counter,采集时才读取
+ * 行缓存按表打标签,表缓存第一次使用时才注册
+ */
+public class HbaseClientMeterBinder implements MeterBinder {
+
+    private final HbaseConnectionPool connectionPool;
+
+    private final HbaseBulkWriter bulkWriter;
+
+    private final AsyncHbaseTemplateUtil asyncUtil;
+
+    private final RowCache rowCache;
+
+    public HbaseClientMeterBinder(HbaseConnectionPool connectionPool, HbaseBulkWriter bulkWriter, AsyncHbaseTemplateUtil asyncUtil,
+                                  RowCache rowCache) {
+        this.connectionPool = connectionPool;
+        this.bulkWriter = bulkWriter;
+        this.asyncUtil = asyncUtil;
+        this.rowCache = rowCache;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("hbase.pool.connections.open", connectionPool, HbaseConnectionPool::getOpenConnections)
+                .register(registry);
+        Gauge.builder("hbase.pool.connections.size", connectionPool, HbaseConnectionPool::getSize)
+                .register(registry);
+        FunctionCounter.builder("hbase.pool.borrows", connectionPool, HbaseConnectionPool::getBorrowCount)
+                .register(registry);
+        FunctionCounter.builder("hbase.pool.borrow.wait", connectionPool,
+                pool -> pool.getBorrowWaitNanos() / (double) TimeUnit.MILLISECONDS.toNanos(1))
+                .baseUnit("milliseconds")
+                .register(registry);
+
+        FunctionCounter.builder("hbase.writer.mutations", bulkWriter, HbaseBulkWriter::getMutationCount)
+                .register(registry);
+        FunctionCounter.builder("hbase.writer.bytes", bulkWriter, HbaseBulkWriter::getMutationBytes)
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("hbase.writer.failures", bulkWriter, HbaseBulkWriter::getFailureCount)
+                .register(registry);
+        FunctionCounter.builder("hbase.writer.flushes", bulkWriter, HbaseBulkWriter::getFlushCount)
+                .register(registry);
+
+        Gauge.builder("hbase.async.in-flight", asyncUtil, AsyncHbaseTemplateUtil::getInFlight)
+                .register(registry);
+
+        rowCache.onTableCache((tableName, tableCache) -> {
+            FunctionCounter.builder("hbase.cache.hits", tableCache, RowCache.TableCache::getHitCount)
+                    .tags("table", tableName)
+                    .register(registry);
+            FunctionCounter.builder("hbase.cache.misses", tableCache, RowCache.TableCache::getMissCount)
+                    .tags("table", tableName)
+                    .register(registry);
+            FunctionCounter.builder("hbase.cache.evictions", tableCache, RowCache.TableCache::getEvictionCount)
+                    .tags("table", tableName)
+                    .register(registry);
+            Gauge.builder("hbase.cache.size", tableCache, RowCache.TableCache::getWeightedSize)
+                    .tags("table", tableName)
+                    .baseUnit("bytes")
+                    .register(registry);
+        });
+    }
+}
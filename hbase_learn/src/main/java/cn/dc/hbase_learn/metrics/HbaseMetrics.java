@@ -0,0 +1,199 @@
+package cn.dc.hbase_learn.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Result;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.hadoop.hbase.RowMapper;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HbaseTemplateUtil各操作的指标,按表名和操作名打标签
+ * <ul>
+ * <li>hbase.client.operation:耗时,timer,可选直方图</li>
+ * <li>hbase.client.rows / cells / bytes:读到或写入的行数、cell数、字节数;读的字节数按行抽样估算</li>
+ * <li>hbase.client.errors:失败次数,另有exception标签</li>
+ * </ul>
+ * 每个(表,操作)的meter只创建一次缓存起来,热路径上只有一次map查找和几次计数;
+ * 超过慢操作阈值的调用打warn日志。
+ */
+public class HbaseMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(HbaseMetrics.class);
+
+    private final MeterRegistry registry;
+
+    private final long slowThresholdNanos;
+
+    private final boolean histogram;
+
+    private final ConcurrentMap<String, Meters> meters = new ConcurrentHashMap<>();
+
+    /**
+     * @param slowThreshold 慢操作阈值,0表示不打日志
+     * @param histogram     是否发布耗时直方图,用于在监控端计算分位数
+     */
+    public HbaseMetrics(MeterRegistry registry, Duration slowThreshold, boolean histogram) {
+        this.registry = registry;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.histogram = histogram;
+    }
+
+    /**
+     * 开始一次操作
+     */
+    public Op start(String operation, String tableName) {
+        return new Op(this, operation, tableName == null ? "" : tableName);
+    }
+
+    private Meters meters(String operation, String tableName) {
+        String key = operation + '\u0000' + tableName;
+        Meters m = meters.get(key);
+        if (m == null) {
+            m = meters.computeIfAbsent(key, k -> new Meters(operation, tableName));
+        }
+        return m;
+    }
+
+    private void finish(Op op) {
+        long elapsed = System.nanoTime() - op.start;
+        Meters m = meters(op.operation, op.tableName);
+        m.timer.record(elapsed, TimeUnit.NANOSECONDS);
+        long rows = op.rows.sum();
+        long cells = op.cells.sum();
+        long bytes = op.bytes.sum();
+        if (rows > 0) m.rows.increment(rows);
+        if (cells > 0) m.cells.increment(cells);
+        if (bytes > 0) m.bytes.increment(bytes);
+        if (op.error != null) {
+            Counter.builder("hbase.client.errors")
+                    .tags("table", op.tableName, "op", op.operation, "exception", op.error.getClass().getSimpleName())
+                    .register(registry)
+                    .increment();
+        }
+        if (slowThresholdNanos > 0 && elapsed > slowThresholdNanos) {
+            log.warn("slow hbase {} on {}: {} ms, rows={}, cells={}, bytes={}", op.operation, op.tableName,
+                    TimeUnit.NANOSECONDS.toMillis(elapsed), rows, cells, bytes);
+        }
+    }
+
+    private final class Meters {
+
+        private final Timer timer;
+
+        private final Counter rows;
+
+        private final Counter cells;
+
+        private final Counter bytes;
+
+        Meters(String operation, String tableName) {
+            Timer.Builder builder = Timer.builder("hbase.client.operation")
+                    .tags("table", tableName, "op", operation);
+            if (histogram) {
+                builder.publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofSeconds(30));
+            }
+            this.timer = builder.register(registry);
+            this.rows = Counter.builder("hbase.client.rows").tags("table", tableName, "op", operation).register(registry);
+            this.cells = Counter.builder("hbase.client.cells").tags("table", tableName, "op", operation).register(registry);
+            this.bytes = Counter.builder("hbase.client.bytes").baseUnit("bytes")
+                    .tags("table", tableName, "op", operation).register(registry);
+        }
+    }
+
+    /**
+     * 一次操作的统计,end之前累加行数等,并行scan时会被多个线程调用,计数用LongAdder不加锁
+     */
+    public static final class Op {
+
+        /*读结果每SAMPLE行估算一次字节数,按比例放大*/
+        private static final int SAMPLE = 16;
+
+        private final HbaseMetrics metrics;
+
+        private final String operation;
+
+        private final String tableName;
+
+        private final long start = System.nanoTime();
+
+        private final LongAdder rows = new LongAdder();
+
+        private final LongAdder cells = new LongAdder();
+
+        private final LongAdder bytes = new LongAdder();
+
+        private volatile Throwable error;
+
+        private Op(HbaseMetrics metrics, String operation, String tableName) {
+            this.metrics = metrics;
+            this.operation = operation;
+            this.tableName = tableName;
+        }
+
+        /**
+         * 记一行读结果
+         */
+        public void result(Result result) {
+            if (result == null || result.isEmpty()) return;
+            Cell[] rawCells = result.rawCells();
+            rows.increment();
+            cells.add(rawCells.length);
+            if (ThreadLocalRandom.current().nextInt(SAMPLE) == 0) {
+                long size = 0;
+                for (Cell cell : rawCells) {
+                    size += CellUtil.estimatedSerializedSizeOf(cell);
+                }
+                bytes.add(size * SAMPLE);
+            }
+        }
+
+        /**
+         * 记一个写操作
+         */
+        public void mutation(Mutation mutation) {
+            rows.increment();
+            cells.add(mutation.size());
+            bytes.add(mutation.heapSize());
+        }
+
+        /**
+         * 包装RowMapper,每映射一行记一次
+         */
+        public <T> RowMapper<T> wrap(RowMapper<T> rowMapper) {
+            return (result, rowNum) -> {
+                result(result);
+                return rowMapper.mapRow(result, rowNum);
+            };
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public void error(Throwable error) {
+            this.error = error;
+        }
+
+        public void end() {
+            metrics.finish(this);
+        }
+    }
+}
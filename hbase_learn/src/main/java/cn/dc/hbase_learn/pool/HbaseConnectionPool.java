@@ -0,0 +1,145 @@
+package cn.dc.hbase_learn.pool;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 共享的HBase连接池
+ * <p>
+ * Connection本身是线程安全的重量级对象(zk会话、meta缓存、rpc客户端),整个应用共用少量几个即可,
+ * 不需要每个线程各建一个。这里固定持有size个连接,按轮询方式借出,借出后不需要归还。
+ * 连接在容器启动时创建(init),容器关闭时释放(close),由HBaseConfiguration管理生命周期。
+ */
+public class HbaseConnectionPool implements Closeable {
+
+    private final Configuration configuration;
+
+    private final AtomicReferenceArray<Connection> connections;
+
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    /*借出次数*/
+    private final LongAdder borrowCount = new LongAdder();
+    /*借出等待总耗时,连接未建好或断开重建时才会产生等待*/
+    private final LongAdder borrowWaitNanos = new LongAdder();
+    private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+
+    public HbaseConnectionPool(Configuration configuration, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("pool size must be positive: " + size);
+        }
+        this.configuration = configuration;
+        this.connections = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * 预热:创建全部连接并访问一次集群,让zk会话和meta定位在第一个请求到来之前完成
+     */
+    public void init() throws IOException {
+        for (int i = 0; i < connections.length(); i++) {
+            Connection connection = connect(i);
+            try (Admin admin = connection.getAdmin()) {
+                admin.listTableNames();
+            }
+        }
+    }
+
+    /**
+     * 借出一个连接,连接线程安全,用完不需要归还也不能关闭
+     */
+    public Connection borrow() throws IOException {
+        if (closed) {
+            throw new IOException("hbase connection pool is closed");
+        }
+        long start = System.nanoTime();
+        int index = (cursor.getAndIncrement() & Integer.MAX_VALUE) % connections.length();
+        Connection connection = connections.get(index);
+        if (connection == null || connection.isClosed() || connection.isAborted()) {
+            connection = connect(index);
+        }
+        long wait = System.nanoTime() - start;
+        borrowCount.increment();
+        borrowWaitNanos.add(wait);
+        maxBorrowWaitNanos.accumulateAndGet(wait, Math::max);
+        return connection;
+    }
+
+    /*
+    创建或重建下标为index的连接;锁整个池,同一时间只有一个线程在建连接,重建很少发生。
+    和close用同一把锁,close之后不会再建出没人关闭的连接
+     */
+    private synchronized Connection connect(int index) throws IOException {
+        if (closed) {
+            throw new IOException("hbase connection pool is closed");
+        }
+        Connection connection = connections.get(index);
+        if (connection != null && !connection.isClosed() && !connection.isAborted()) {
+            return connection;
+        }
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+                //已经失效的连接,关闭失败无需处理
+            }
+        }
+        connection = ConnectionFactory.createConnection(configuration);
+        connections.set(index, connection);
+        return connection;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        IOException failure = null;
+        for (int i = 0; i < connections.length(); i++) {
+            Connection connection = connections.getAndSet(i, null);
+            if (connection == null) continue;
+            try {
+                connection.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    public int getSize() {
+        return connections.length();
+    }
+
+    /**
+     * 当前处于打开状态的连接数
+     */
+    public int getOpenConnections() {
+        int open = 0;
+        for (int i = 0; i < connections.length(); i++) {
+            Connection connection = connections.get(i);
+            if (connection != null && !connection.isClosed()) open++;
+        }
+        return open;
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.sum();
+    }
+
+    public long getBorrowWaitNanos() {
+        return borrowWaitNanos.sum();
+    }
+
+    public long getMaxBorrowWaitNanos() {
+        return maxBorrowWaitNanos.get();
+    }
+}
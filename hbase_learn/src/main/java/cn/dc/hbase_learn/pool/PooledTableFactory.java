@@ -0,0 +1,38 @@
+package cn.dc.hbase_learn.pool;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.HTableInterfaceFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * 让HbaseTemplate的表对象也从共享连接上获取,
+ * 默认的HTableFactory每次按Configuration new HTable,表关闭时还会牵连底层连接
+ */
+public class PooledTableFactory implements HTableInterfaceFactory {
+
+    private final HbaseConnectionPool connectionPool;
+
+    public PooledTableFactory(HbaseConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    @Override
+    public HTableInterface createHTableInterface(Configuration config, byte[] tableName) {
+        try {
+            //1.x的Connection.getTable返回的就是HTable,实现了HTableInterface
+            return (HTableInterface) connectionPool.borrow().getTable(TableName.valueOf(tableName));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*Table是轻量对象,用完直接关闭,连接仍留在池中*/
+    @Override
+    public void releaseHTableInterface(HTableInterface table) throws IOException {
+        table.close();
+    }
+}
@@ -0,0 +1,145 @@
+package cn.dc.hbase_learn.rowkey;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.MD5Hash;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 内置的rowkey策略
+ * <ul>
+ * <li>identity:原样使用</li>
+ * <li>salt:N,按逻辑rowkey的hash分到N个桶,前缀为补零的桶号加"|",如 07|20191018001</li>
+ * <li>hash:K,取逻辑rowkey的md5前K个十六进制字符加"|"作为前缀,共16^K个桶</li>
+ * </ul>
+ */
+public final class RowKeyStrategies {
+
+    private static final RowKeyStrategy IDENTITY = new RowKeyStrategy() {
+        @Override
+        public String encode(String rowkey) {
+            return rowkey;
+        }
+
+        @Override
+        public List<String> prefixes() {
+            return Collections.singletonList("");
+        }
+
+        @Override
+        public int prefixLength() {
+            return 0;
+        }
+    };
+
+    private RowKeyStrategies() {
+    }
+
+    public static RowKeyStrategy identity() {
+        return IDENTITY;
+    }
+
+    public static RowKeyStrategy salted(int buckets) {
+        if (buckets < 1 || buckets > 1000) {
+            throw new IllegalArgumentException("salt buckets must be in [1, 1000]: " + buckets);
+        }
+        return buckets == 1 ? IDENTITY : new SaltedStrategy(buckets);
+    }
+
+    public static RowKeyStrategy hashPrefix(int hexChars) {
+        if (hexChars < 1 || hexChars > 3) {
+            throw new IllegalArgumentException("hash prefix length must be in [1, 3]: " + hexChars);
+        }
+        return new HashPrefixStrategy(hexChars);
+    }
+
+    /**
+     * 解析配置,identity / salt:N / hash:K
+     */
+    public static RowKeyStrategy parse(String spec) {
+        String value = spec == null ? "" : spec.trim().toLowerCase();
+        if (value.isEmpty() || "identity".equals(value)) {
+            return IDENTITY;
+        }
+        int colon = value.indexOf(':');
+        String type = colon < 0 ? value : value.substring(0, colon);
+        int size;
+        try {
+            size = Integer.parseInt(value.substring(colon + 1));
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("invalid rowkey strategy: " + spec);
+        }
+        if ("salt".equals(type)) return salted(size);
+        if ("hash".equals(type)) return hashPrefix(size);
+        throw new IllegalArgumentException("unknown rowkey strategy: " + spec);
+    }
+
+    private static final class SaltedStrategy implements RowKeyStrategy {
+
+        private final int buckets;
+
+        private final List<String> prefixes;
+
+        SaltedStrategy(int buckets) {
+            this.buckets = buckets;
+            int width = String.valueOf(buckets - 1).length();
+            List<String> prefixes = new ArrayList<>(buckets);
+            for (int i = 0; i < buckets; i++) {
+                prefixes.add(String.format("%0" + width + "d|", i));
+            }
+            this.prefixes = Collections.unmodifiableList(prefixes);
+        }
+
+        @Override
+        public String encode(String rowkey) {
+            //String.hashCode的算法由规范固定,不同jvm结果一致
+            int h = rowkey.hashCode();
+            h ^= h >>> 16;
+            return prefixes.get((h & Integer.MAX_VALUE) % buckets) + rowkey;
+        }
+
+        @Override
+        public List<String> prefixes() {
+            return prefixes;
+        }
+
+        @Override
+        public int prefixLength() {
+            return prefixes.get(0).length();
+        }
+    }
+
+    private static final class HashPrefixStrategy implements RowKeyStrategy {
+
+        private final int hexChars;
+
+        private final List<String> prefixes;
+
+        HashPrefixStrategy(int hexChars) {
+            this.hexChars = hexChars;
+            int buckets = 1 << (4 * hexChars);
+            List<String> prefixes = new ArrayList<>(buckets);
+            for (int i = 0; i < buckets; i++) {
+                prefixes.add(String.format("%0" + hexChars + "x|", i));
+            }
+            this.prefixes = Collections.unmodifiableList(prefixes);
+        }
+
+        @Override
+        public String encode(String rowkey) {
+            return MD5Hash.getMD5AsHex(Bytes.toBytes(rowkey)).substring(0, hexChars) + "|" + rowkey;
+        }
+
+        @Override
+        public List<String> prefixes() {
+            return prefixes;
+        }
+
+        @Override
+        public int prefixLength() {
+            return hexChars + 1;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package cn.dc.hbase_learn.rowkey;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 逻辑rowkey和物理rowkey之间的转换
+ * <p>
+ * 物理rowkey = 定长前缀 + 逻辑rowkey,前缀由逻辑rowkey确定,所以单行读写直接定位到一个桶;
+ * 范围scan要在每个桶里各scan一次,再按逻辑rowkey归并。
+ */
+public interface RowKeyStrategy {
+
+    /**
+     * 逻辑rowkey转物理rowkey
+     */
+    String encode(String rowkey);
+
+    /**
+     * 所有可能的前缀,按字典序
+     */
+    List<String> prefixes();
+
+    /**
+     * 前缀的字节长度,前缀只包含ASCII字符
+     */
+    int prefixLength();
+
+    /**
+     * 物理rowkey转逻辑rowkey
+     */
+    default String decode(String rowkey) {
+        return rowkey.substring(prefixLength());
+    }
+
+    default boolean isIdentity() {
+        return prefixLength() == 0;
+    }
+
+    /**
+     * 把逻辑rowkey区间上的scan拆成每个桶一个scan
+     */
+    default List<Scan> fanOut(Scan scan) throws IOException {
+        if (isIdentity()) {
+            return Collections.singletonList(scan);
+        }
+        byte[] start = scan.getStartRow();
+        byte[] stop = scan.getStopRow();
+        List<Scan> scans = new ArrayList<>();
+        for (String prefix : prefixes()) {
+            byte[] low = Bytes.toBytes(prefix);
+            byte[] high = Bytes.toBytes(prefix);
+            high[high.length - 1]++;
+            Scan bucket = new Scan(scan);
+            if (scan.isReversed()) {
+                bucket.setStartRow(start.length == 0 ? high : Bytes.add(low, start));
+                bucket.setStopRow(stop.length == 0 ? low : Bytes.add(low, stop));
+            } else {
+                bucket.setStartRow(Bytes.add(low, start));
+                bucket.setStopRow(stop.length == 0 ? high : Bytes.add(low, stop));
+            }
+            scans.add(bucket);
+        }
+        return scans;
+    }
+
+    /**
+     * 按逻辑rowkey比较物理rowkey
+     */
+    default Comparator<byte[]> logicalOrder() {
+        int prefixLength = prefixLength();
+        return (a, b) -> Bytes.compareTo(a, prefixLength, a.length - prefixLength, b, prefixLength, b.length - prefixLength);
+    }
+
+    /**
+     * 按逻辑rowkey比较结果行,reversed为true时倒序
+     */
+    default Comparator<Result> resultOrder(boolean reversed) {
+        Comparator<byte[]> logicalOrder = logicalOrder();
+        Comparator<Result> order = (a, b) -> logicalOrder.compare(a.getRow(), b.getRow());
+        return reversed ? order.reversed() : order;
+    }
+}
@@ -0,0 +1,30 @@
+package cn.dc.hbase_learn.rowkey;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按表名取rowkey策略,未配置的表原样使用rowkey
+ */
+public class RowKeyStrategyRegistry {
+
+    private final Map<String, RowKeyStrategy> strategies = new ConcurrentHashMap<>();
+
+    /**
+     * @param specs 表名 -> identity / salt:N / hash:K
+     */
+    public RowKeyStrategyRegistry(Map<String, String> specs) {
+        specs.forEach((tableName, spec) -> register(tableName, RowKeyStrategies.parse(spec)));
+    }
+
+    /**
+     * 表里已有数据时修改策略会导致旧数据读不到,需要先迁移
+     */
+    public void register(String tableName, RowKeyStrategy strategy) {
+        strategies.put(tableName, strategy);
+    }
+
+    public RowKeyStrategy forTable(String tableName) {
+        return strategies.getOrDefault(tableName, RowKeyStrategies.identity());
+    }
+}
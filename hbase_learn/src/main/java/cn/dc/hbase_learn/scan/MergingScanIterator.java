@@ -0,0 +1,76 @@
+package cn.dc.hbase_learn.scan;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.springframework.data.hadoop.hbase.RowMapper;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 多路归并多个各自有序的scan,按order输出,用于加盐表的跨桶scan
+ * 每一路同时只在内存里保留当前一行
+ */
+public class MergingScanIterator<T> extends ScanIterator<T> {
+
+    private final List<ScanIterator<Result>> sources;
+
+    private final PriorityQueue<Head> heads;
+
+    public MergingScanIterator(List<ScanIterator<Result>> sources, Comparator<Result> order, RowMapper<T> rowMapper) {
+        super(rowMapper);
+        this.sources = sources;
+        this.heads = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> order.compare(a.result, b.result));
+        try {
+            for (ScanIterator<Result> source : sources) {
+                advance(source);
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    protected Result nextResult() {
+        Head head = heads.poll();
+        if (head == null) {
+            return null;
+        }
+        advance(head.source);
+        return head.result;
+    }
+
+    private void advance(ScanIterator<Result> source) {
+        if (source.hasNext()) {
+            heads.add(new Head(source, source.next()));
+        }
+    }
+
+    @Override
+    protected void release() throws IOException {
+        heads.clear();
+        RuntimeException failure = null;
+        for (ScanIterator<Result> source : sources) {
+            try {
+                source.close();
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    private static final class Head {
+
+        private final ScanIterator<Result> source;
+
+        private final Result result;
+
+        Head(ScanIterator<Result> source, Result result) {
+            this.source = source;
+            this.result = result;
+        }
+    }
+}
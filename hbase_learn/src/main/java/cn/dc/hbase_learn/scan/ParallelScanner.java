@@ -0,0 +1,177 @@
+package cn.dc.hbase_learn.scan;
+
+import cn.dc.hbase_learn.pool.HbaseConnectionPool;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+import org.springframework.data.hadoop.hbase.HbaseSystemException;
+import org.springframework.data.hadoop.hbase.RowMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按region边界切分scan并行执行
+ * <p>
+ * 从RegionLocator读取region的起止key,把[startRow, stopRow)切成互不重叠的子区间,
+ * 每个子区间一个scanner,在有界线程池中执行。子区间按rowkey有序,
+ * ordered=true时按子区间顺序拼接,结果与单scanner一致;ordered=false时先完成的先合并。
+ */
+public class ParallelScanner implements Closeable {
+
+    private final HbaseConnectionPool connectionPool;
+
+    private final ThreadPoolExecutor executor;
+
+    public ParallelScanner(HbaseConnectionPool connectionPool, int parallelism) {
+        this.connectionPool = connectionPool;
+        AtomicInteger threadNum = new AtomicInteger();
+        //队列满时由调用线程自己执行子区间,天然限流
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(parallelism * 4),
+                r -> {
+                    Thread thread = new Thread(r, "hbase-parallel-scan-" + threadNum.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 并行scan
+     *
+     * @param scan    模板scan,startRow/stopRow为空表示不限
+     * @param ordered 是否保持rowkey顺序
+     */
+    public <T> List<T> scan(String tableName, Scan scan, RowMapper<T> rowMapper, boolean ordered) throws IOException {
+        Connection connection = connectionPool.borrow();
+        List<Scan> splits = split(connection, tableName, scan);
+        List<Future<List<T>>> futures = new ArrayList<>(splits.size());
+        CompletionService<List<T>> completionService = new ExecutorCompletionService<>(executor);
+        try {
+            for (Scan split : splits) {
+                futures.add(completionService.submit(scanTask(connection, tableName, split, rowMapper)));
+            }
+            List<T> results = new ArrayList<>();
+            if (ordered) {
+                for (Future<List<T>> future : futures) {
+                    results.addAll(future.get());
+                }
+            } else {
+                for (int i = 0; i < futures.size(); i++) {
+                    results.addAll(completionService.take().get());
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HbaseSystemException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new HbaseSystemException(cause instanceof Exception ? (Exception) cause : e);
+        } finally {
+            for (Future<List<T>> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 并行执行一组互相独立的scan,不再按region切分,结果与scans一一对应
+     */
+    public <T> List<List<T>> scanEach(String tableName, List<Scan> scans, RowMapper<T> rowMapper) throws IOException {
+        Connection connection = connectionPool.borrow();
+        List<Future<List<T>>> futures = new ArrayList<>(scans.size());
+        try {
+            for (Scan scan : scans) {
+                futures.add(executor.submit(scanTask(connection, tableName, scan, rowMapper)));
+            }
+            List<List<T>> results = new ArrayList<>(scans.size());
+            for (Future<List<T>> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HbaseSystemException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new HbaseSystemException(cause instanceof Exception ? (Exception) cause : e);
+        } finally {
+            for (Future<List<T>> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 按region边界切分scan,返回的子scan按rowkey升序排列
+     */
+    public List<Scan> split(Connection connection, String tableName, Scan scan) throws IOException {
+        List<Scan> splits = new ArrayList<>();
+        //反向scan的起止语义相反,不做切分
+        if (scan.isReversed()) {
+            splits.add(scan);
+            return splits;
+        }
+        byte[] startRow = scan.getStartRow();
+        byte[] stopRow = scan.getStopRow();
+        try (RegionLocator locator = connection.getRegionLocator(TableName.valueOf(tableName))) {
+            Pair<byte[][], byte[][]> keys = locator.getStartEndKeys();
+            for (int i = 0; i < keys.getFirst().length; i++) {
+                byte[] regionStart = keys.getFirst()[i];
+                byte[] regionEnd = keys.getSecond()[i];
+                //与请求区间没有交集的region跳过
+                if (stopRow.length > 0 && Bytes.compareTo(regionStart, stopRow) >= 0) continue;
+                if (regionEnd.length > 0 && Bytes.compareTo(regionEnd, startRow) <= 0) continue;
+                Scan split = new Scan(scan);
+                split.setStartRow(Bytes.compareTo(regionStart, startRow) > 0 ? regionStart : startRow);
+                split.setStopRow(stopRow.length == 0 || (regionEnd.length > 0 && Bytes.compareTo(regionEnd, stopRow) < 0)
+                        ? regionEnd : stopRow);
+                splits.add(split);
+            }
+        }
+        splits.sort((a, b) -> Bytes.compareTo(a.getStartRow(), b.getStartRow()));
+        return splits;
+    }
+
+    private <T> Callable<List<T>> scanTask(Connection connection, String tableName, Scan scan, RowMapper<T> rowMapper) {
+        return () -> {
+            List<T> rows = new ArrayList<>();
+            try (Table table = connection.getTable(TableName.valueOf(tableName));
+                 ResultScanner scanner = table.getScanner(scan)) {
+                int rowNum = 0;
+                for (Result result : scanner) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedException("parallel scan cancelled");
+                    }
+                    rows.add(rowMapper.mapRow(result, rowNum++));
+                }
+            }
+            return rows;
+        };
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,121 @@
+package cn.dc.hbase_learn.scan;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.CompareFilter;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.MultipleColumnPrefixFilter;
+import org.apache.hadoop.hbase.filter.QualifierFilter;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * scan的列投影,只把需要映射的列从region server取回来
+ * <p>
+ * 指定了列族时用scan.addColumn精确限定;没有列族时在服务端按列名过滤:MultipleColumnPrefixFilter负责跳到下一个候选列,
+ * 再用QualifierFilter精确匹配,id不会把idCard也取回来。
+ * 不指定列时使用目标类的可写属性名。scan上已有的SingleColumnValueFilter依赖的列会自动加入投影,
+ * 否则过滤器看不到该列,条件会失效。
+ */
+public final class Projection {
+
+    /*不限列族,列由目标类推导*/
+    public static final Projection DEFAULT = new Projection(null, null);
+
+    /*不做投影,取回所有列*/
+    public static final Projection ALL = new Projection(null, Collections.emptySet());
+
+    private final byte[] family;
+
+    private final Collection<String> columns;
+
+    private Projection(byte[] family, Collection<String> columns) {
+        this.family = family;
+        this.columns = columns;
+    }
+
+    /**
+     * 限定列族,列由目标类推导
+     */
+    public static Projection family(String family) {
+        return new Projection(Bytes.toBytes(family), null);
+    }
+
+    /**
+     * 限定列族和列
+     */
+    public static Projection of(String family, String... columns) {
+        return new Projection(family == null ? null : Bytes.toBytes(family), new LinkedHashSet<>(Arrays.asList(columns)));
+    }
+
+    /**
+     * 把投影加到scan上,应在设置过滤器之后调用
+     *
+     * @param defaultColumns 没有显式指定列时使用的列,一般是目标类的属性名
+     */
+    public Scan apply(Scan scan, Collection<String> defaultColumns) {
+        Collection<String> projected = columns != null ? columns : defaultColumns;
+        if (projected == null) {
+            return scan;
+        }
+        List<SingleColumnValueFilter> valueFilters = valueFilters(scan.getFilter());
+        if (family != null) {
+            if (projected.isEmpty()) {
+                scan.addFamily(family);
+            } else {
+                for (String column : projected) {
+                    scan.addColumn(family, Bytes.toBytes(column));
+                }
+            }
+            for (SingleColumnValueFilter valueFilter : valueFilters) {
+                scan.addColumn(valueFilter.getFamily(), valueFilter.getQualifier());
+            }
+        } else if (!projected.isEmpty()) {
+            Set<String> prefixes = new LinkedHashSet<>(projected);
+            for (SingleColumnValueFilter valueFilter : valueFilters) {
+                prefixes.add(Bytes.toString(valueFilter.getQualifier()));
+            }
+            byte[][] prefixBytes = new byte[prefixes.size()][];
+            FilterList exact = new FilterList(FilterList.Operator.MUST_PASS_ONE);
+            int i = 0;
+            for (String prefix : prefixes) {
+                prefixBytes[i] = Bytes.toBytes(prefix);
+                exact.addFilter(new QualifierFilter(CompareFilter.CompareOp.EQUAL, new BinaryComparator(prefixBytes[i])));
+                i++;
+            }
+            Filter columnFilter = new FilterList(FilterList.Operator.MUST_PASS_ALL, new MultipleColumnPrefixFilter(prefixBytes), exact);
+            //值过滤器放在前面,保证它在列被过滤掉之前看到自己的列
+            scan.setFilter(scan.getFilter() == null ? columnFilter
+                    : new FilterList(FilterList.Operator.MUST_PASS_ALL, scan.getFilter(), columnFilter));
+        }
+        return scan;
+    }
+
+    /**
+     * 过滤条件里的所有SingleColumnValueFilter,包括嵌套在FilterList里的
+     */
+    public static List<SingleColumnValueFilter> valueFilters(Filter filter) {
+        List<SingleColumnValueFilter> valueFilters = new ArrayList<>();
+        collectValueFilters(filter, valueFilters);
+        return valueFilters;
+    }
+
+    private static void collectValueFilters(Filter filter, List<SingleColumnValueFilter> valueFilters) {
+        if (filter instanceof SingleColumnValueFilter) {
+            valueFilters.add((SingleColumnValueFilter) filter);
+        } else if (filter instanceof FilterList) {
+            for (Filter child : ((FilterList) filter).getFilters()) {
+                collectValueFilters(child, valueFilters);
+            }
+        }
+    }
+}
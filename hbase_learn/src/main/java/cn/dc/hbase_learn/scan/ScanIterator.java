@@ -0,0 +1,122 @@
+package cn.dc.hbase_learn.scan;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.springframework.data.hadoop.hbase.HbaseSystemException;
+import org.springframework.data.hadoop.hbase.RowMapper;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 流式读取scan结果,不把整个结果集放进内存
+ * <p>
+ * ResultScanner每次RPC按scan.setCaching的行数拉取一批,调用方消费完一批才会拉下一批。
+ * 读到末尾时自动释放scanner,提前结束时调用方必须close(推荐try-with-resources)。
+ */
+public class ScanIterator<T> implements Iterator<T>, AutoCloseable {
+
+    private final Table table;
+
+    private final ResultScanner scanner;
+
+    private final RowMapper<T> rowMapper;
+
+    private int rowNum;
+
+    private T next;
+
+    private boolean closed;
+
+    /*
+    子类自己提供Result来源,覆盖nextResult和release
+     */
+    protected ScanIterator(RowMapper<T> rowMapper) {
+        this.rowMapper = rowMapper;
+        this.table = null;
+        this.scanner = null;
+    }
+
+    public ScanIterator(Connection connection, String tableName, Scan scan, RowMapper<T> rowMapper) throws IOException {
+        this.rowMapper = rowMapper;
+        this.table = connection.getTable(TableName.valueOf(tableName));
+        try {
+            this.scanner = table.getScanner(scan);
+        } catch (IOException e) {
+            table.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && !closed) {
+            try {
+                Result result = nextResult();
+                if (result == null) {
+                    close();
+                    return false;
+                }
+                next = rowMapper.mapRow(result, rowNum++);
+            } catch (Exception e) {
+                close();
+                throw new HbaseSystemException(e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T current = next;
+        next = null;
+        return current;
+    }
+
+    /**
+     * 包装成Stream,Stream关闭时释放scanner
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * 下一行原始结果,没有更多时返回null
+     */
+    protected Result nextResult() throws IOException {
+        return scanner.next();
+    }
+
+    /**
+     * 释放scanner等资源,只会调用一次
+     */
+    protected void release() throws IOException {
+        scanner.close();
+        table.close();
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        next = null;
+        try {
+            release();
+        } catch (IOException e) {
+            throw new HbaseSystemException(e);
+        }
+    }
+}
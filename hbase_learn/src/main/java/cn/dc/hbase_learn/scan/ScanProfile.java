@@ -0,0 +1,60 @@
+package cn.dc.hbase_learn.scan;
+
+import lombok.Data;
+import org.apache.hadoop.hbase.client.Consistency;
+import org.apache.hadoop.hbase.client.Scan;
+
+/**
+ * 一组scan参数,在hbase.scan.profiles下按名字配置,没有配置的项保持Scan的默认值
+ */
+@Data
+public class ScanProfile {
+
+    /*每次RPC拉取的行数*/
+    private Integer caching;
+
+    /*每个Result最多的cell数,宽行会被拆成多个Result,只适合按cell处理的场景,和整行过滤器不能同时使用;
+    映射成对象的读取需要整行,HbaseTemplateUtil的查询方法忽略这一项*/
+    private Integer batch;
+
+    /*每次RPC返回的最大字节数,和caching先到先停*/
+    private Long maxResultSize;
+
+    /*读到的block是否放进region server的block cache,大scan应关闭,避免冲掉热数据*/
+    private Boolean cacheBlocks;
+
+    /*small scan用一次RPC完成open/next/close,适合只有几行、不超过一个block的读*/
+    private Boolean small;
+
+    /*倒序读取,范围scan的startRow要大于stopRow*/
+    private Boolean reversed;
+
+    /*STRONG只读主region;TIMELINE允许读region副本,可能读到旧数据*/
+    private Consistency consistency;
+
+    /*指定读哪个副本,一般不设置,由TIMELINE自动选择*/
+    private Integer replicaId;
+
+    /**
+     * 把配置过的项设置到scan上
+     */
+    public Scan apply(Scan scan) {
+        return apply(scan, false);
+    }
+
+    /**
+     * @param wholeRows true时不设置batch,每个Result都是完整的一行
+     */
+    public Scan apply(Scan scan, boolean wholeRows) {
+        if (caching != null) scan.setCaching(caching);
+        //有整行过滤器时setBatch会抛IncompatibleFilterException
+        if (batch != null && !wholeRows && (scan.getFilter() == null || !scan.getFilter().hasFilterRow())) scan.setBatch(batch);
+        if (maxResultSize != null) scan.setMaxResultSize(maxResultSize);
+        if (cacheBlocks != null) scan.setCacheBlocks(cacheBlocks);
+        if (small != null) scan.setSmall(small);
+        if (reversed != null) scan.setReversed(reversed);
+        if (consistency != null) scan.setConsistency(consistency);
+        if (replicaId != null) scan.setReplicaId(replicaId);
+        return scan;
+    }
+}
@@ -0,0 +1,75 @@
+package cn.dc.hbase_learn.scan;
+
+import cn.dc.hbase_learn.config.HbaseScanProperties;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.Map;
+
+/**
+ * 按名字选择scan参数
+ * <p>
+ * 不指定名字时,限定了rowkey范围的scan用boundedProfile,全表scan用unboundedProfile。
+ * 默认profile没有配置时使用原来的固定参数:每批2000行,不进block cache。
+ */
+public class ScanProfiles {
+
+    private static final ScanProfile FALLBACK = new ScanProfile();
+
+    static {
+        FALLBACK.setCaching(2000);
+        FALLBACK.setCacheBlocks(false);
+    }
+
+    private final HbaseScanProperties properties;
+
+    public ScanProfiles(HbaseScanProperties properties) {
+        this.properties = properties;
+    }
+
+    public Map<String, ScanProfile> getProfiles() {
+        return properties.getProfiles();
+    }
+
+    /**
+     * @throws IllegalArgumentException 没有这个名字的profile
+     */
+    public ScanProfile get(String name) {
+        ScanProfile profile = properties.getProfiles().get(name);
+        if (profile == null) {
+            throw new IllegalArgumentException("unknown scan profile: " + name);
+        }
+        return profile;
+    }
+
+    /**
+     * 按名字设置scan参数,应在设置范围和过滤器之后调用
+     *
+     * @param name 为null时按scan是否限定范围选择默认profile
+     */
+    public Scan apply(Scan scan, String name) {
+        return resolve(scan, name).apply(scan);
+    }
+
+    /**
+     * 结果要按整行处理(映射成对象、按行计数)时使用,忽略profile的batch,不依赖过滤器,应在设置范围之后调用
+     */
+    public Scan applyWholeRows(Scan scan, String name) {
+        return resolve(scan, name).apply(scan, true);
+    }
+
+    private ScanProfile resolve(Scan scan, String name) {
+        if (name != null) {
+            return get(name);
+        }
+        String defaultName = isBounded(scan) ? properties.getBoundedProfile() : properties.getUnboundedProfile();
+        ScanProfile profile = defaultName == null ? null : properties.getProfiles().get(defaultName);
+        return profile == null ? FALLBACK : profile;
+    }
+
+    public static boolean isBounded(Scan scan) {
+        return !Bytes.equals(scan.getStartRow(), HConstants.EMPTY_START_ROW)
+                || !Bytes.equals(scan.getStopRow(), HConstants.EMPTY_END_ROW);
+    }
+}
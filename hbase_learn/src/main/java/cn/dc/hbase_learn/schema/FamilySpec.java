@@ -0,0 +1,108 @@
+package cn.dc.hbase_learn.schema;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+
+/**
+ * 列族配置,没有设置的项使用hbase默认值,修改表结构时保持原值
+ */
+public class FamilySpec {
+
+    private final String name;
+
+    private Compression.Algorithm compression;
+
+    private DataBlockEncoding dataBlockEncoding;
+
+    private BloomType bloomType;
+
+    private Integer blockSize;
+
+    private Boolean inMemory;
+
+    private Integer ttlSeconds;
+
+    private Integer maxVersions;
+
+    private FamilySpec(String name) {
+        this.name = name;
+    }
+
+    public static FamilySpec of(String name) {
+        return new FamilySpec(name);
+    }
+
+    /**
+     * 压缩算法,SNAPPY/LZ4需要region server上有对应的native库
+     */
+    public FamilySpec compression(Compression.Algorithm compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * 块内编码,rowkey有公共前缀时FAST_DIFF/PREFIX能明显减小块大小
+     */
+    public FamilySpec dataBlockEncoding(DataBlockEncoding dataBlockEncoding) {
+        this.dataBlockEncoding = dataBlockEncoding;
+        return this;
+    }
+
+    /**
+     * 布隆过滤器,按rowkey随机读用ROW,按列读用ROWCOL
+     */
+    public FamilySpec bloomType(BloomType bloomType) {
+        this.bloomType = bloomType;
+        return this;
+    }
+
+    /**
+     * HFile块大小,字节,随机读多调小,顺序scan多调大
+     */
+    public FamilySpec blockSize(int blockSize) {
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    public FamilySpec inMemory(boolean inMemory) {
+        this.inMemory = inMemory;
+        return this;
+    }
+
+    public FamilySpec ttlSeconds(int ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+        return this;
+    }
+
+    public FamilySpec maxVersions(int maxVersions) {
+        this.maxVersions = maxVersions;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 新建列族的描述
+     */
+    public HColumnDescriptor toDescriptor() {
+        return applyTo(new HColumnDescriptor(name));
+    }
+
+    /**
+     * 把设置过的项覆盖到已有的列族描述上
+     */
+    public HColumnDescriptor applyTo(HColumnDescriptor descriptor) {
+        if (compression != null) descriptor.setCompressionType(compression);
+        if (dataBlockEncoding != null) descriptor.setDataBlockEncoding(dataBlockEncoding);
+        if (bloomType != null) descriptor.setBloomFilterType(bloomType);
+        if (blockSize != null) descriptor.setBlocksize(blockSize);
+        if (inMemory != null) descriptor.setInMemory(inMemory);
+        if (ttlSeconds != null) descriptor.setTimeToLive(ttlSeconds);
+        if (maxVersions != null) descriptor.setMaxVersions(maxVersions);
+        return descriptor;
+    }
+}
@@ -0,0 +1,159 @@
+package cn.dc.hbase_learn.schema;
+
+import cn.dc.hbase_learn.rowkey.RowKeyStrategy;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 建表配置:列族设置和预分区
+ * <p>
+ * 预分区三选一:显式splitKeys;uniformSplit按字节在[startKey, endKey]间均分;
+ * hexSplit按十六进制字符串均分,适合md5等hash前缀的rowkey。
+ * 加盐表用splitByPrefixes,每个桶一个region。
+ * coprocessor注册表级协处理器,比如聚合用的AggregateImplementation。
+ */
+public class TableSpec {
+
+    private final TableName tableName;
+
+    private final List<FamilySpec> families = new ArrayList<>();
+
+    private byte[][] splitKeys;
+
+    private byte[] startKey;
+
+    private byte[] endKey;
+
+    private int regions;
+
+    private final List<String> coprocessors = new ArrayList<>();
+
+    private TableSpec(String tableName) {
+        this.tableName = TableName.valueOf(tableName);
+    }
+
+    public static TableSpec of(String tableName) {
+        return new TableSpec(tableName);
+    }
+
+    public TableSpec family(FamilySpec family) {
+        families.add(family);
+        return this;
+    }
+
+    /**
+     * 使用默认设置的列族
+     */
+    public TableSpec families(String... names) {
+        for (String name : names) {
+            families.add(FamilySpec.of(name));
+        }
+        return this;
+    }
+
+    public TableSpec splitKeys(byte[]... splitKeys) {
+        this.splitKeys = splitKeys;
+        this.startKey = null;
+        this.endKey = null;
+        return this;
+    }
+
+    /**
+     * 在[startKey, endKey]之间按字节均分成regions个region
+     */
+    public TableSpec uniformSplit(byte[] startKey, byte[] endKey, int regions) {
+        if (regions < 3) {
+            throw new IllegalArgumentException("uniform split needs at least 3 regions: " + regions);
+        }
+        this.splitKeys = null;
+        this.startKey = startKey;
+        this.endKey = endKey;
+        this.regions = regions;
+        return this;
+    }
+
+    /**
+     * 按8位十六进制字符串空间(00000000~ffffffff)均分成regions个region
+     */
+    public TableSpec hexSplit(int regions) {
+        if (regions < 2) {
+            throw new IllegalArgumentException("hex split needs at least 2 regions: " + regions);
+        }
+        BigInteger max = BigInteger.ONE.shiftLeft(32);
+        byte[][] keys = new byte[regions - 1][];
+        for (int i = 1; i < regions; i++) {
+            BigInteger key = max.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(regions));
+            keys[i - 1] = Bytes.toBytes(String.format("%08x", key.longValue()));
+        }
+        return splitKeys(keys);
+    }
+
+    /**
+     * 按rowkey策略的桶前缀分区,每个桶一个region
+     */
+    public TableSpec splitByPrefixes(RowKeyStrategy strategy) {
+        List<String> prefixes = strategy.prefixes();
+        byte[][] keys = new byte[Math.max(0, prefixes.size() - 1)][];
+        for (int i = 1; i < prefixes.size(); i++) {
+            keys[i - 1] = Bytes.toBytes(prefixes.get(i));
+        }
+        return splitKeys(keys);
+    }
+
+    /**
+     * 注册协处理器,类需要在region server的classpath里
+     */
+    public TableSpec coprocessor(String className) {
+        coprocessors.add(className);
+        return this;
+    }
+
+    public TableName getTableName() {
+        return tableName;
+    }
+
+    public List<FamilySpec> getFamilies() {
+        return Collections.unmodifiableList(families);
+    }
+
+    /**
+     * 预分区的split key,没有预分区或使用uniformSplit时返回null
+     */
+    public byte[][] getSplitKeys() {
+        return splitKeys == null || splitKeys.length == 0 ? null : splitKeys;
+    }
+
+    public byte[] getStartKey() {
+        return startKey;
+    }
+
+    public byte[] getEndKey() {
+        return endKey;
+    }
+
+    public int getRegions() {
+        return regions;
+    }
+
+    public List<String> getCoprocessors() {
+        return Collections.unmodifiableList(coprocessors);
+    }
+
+    public HTableDescriptor toDescriptor() throws IOException {
+        HTableDescriptor descriptor = new HTableDescriptor(tableName);
+        for (FamilySpec family : families) {
+            descriptor.addFamily(family.toDescriptor());
+        }
+        for (String className : coprocessors) {
+            descriptor.addCoprocessor(className);
+        }
+        return descriptor;
+    }
+}
@@ -0,0 +1,192 @@
+package cn.dc.hbase_learn.utils;
+
+import cn.dc.hbase_learn.scan.Projection;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * HbaseTemplateUtil的异步版本,方法返回CompletableFuture,调用线程不等待RPC
+ * <p>
+ * 请求在有界的io线程池中执行,同时在途的请求数不超过maxInFlight,超过时立即以
+ * RejectedExecutionException失败,不排队也不阻塞调用线程。每个请求有超时,
+ * 超时后future以TimeoutException失败并中断执行线程。
+ * 在途数按实际执行计算:超时的请求在HBase调用真正返回前仍然占用名额,大多数RPC不响应中断。
+ * 读缓存、二级索引、编码规则与HbaseTemplateUtil完全相同。
+ * <p>
+ * future在io线程上完成,thenApply等回调不要做阻塞操作,需要时用thenApplyAsync指定自己的线程池。
+ */
+public class AsyncHbaseTemplateUtil implements Closeable {
+
+    private final HbaseTemplateUtil delegate;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ScheduledExecutorService timer;
+
+    private final Semaphore inFlight;
+
+    private final int maxInFlight;
+
+    private final long timeoutMillis;
+
+    public AsyncHbaseTemplateUtil(HbaseTemplateUtil delegate, int threads, int maxInFlight, long timeoutMillis) {
+        this.delegate = delegate;
+        this.timeoutMillis = timeoutMillis;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        AtomicInteger threadNum = new AtomicInteger();
+        //名额在任务实际结束(或排队时被取消)后才释放,排队加执行的任务数不超过maxInFlight,队列容量等于上限不会触发拒绝
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxInFlight)),
+                r -> {
+                    Thread thread = new Thread(r, "hbase-async-" + threadNum.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hbase-async-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public <T> CompletableFuture<T> getOneToClass(Class<T> c, String tableName, String rowkey) {
+        return submit(() -> delegate.getOneToClass(c, tableName, rowkey));
+    }
+
+    public CompletableFuture<Map<String, Object>> getOneToMap(String tableName, String rowkey) {
+        return submit(() -> delegate.getOneToMap(tableName, rowkey));
+    }
+
+    public CompletableFuture<String> getColumn(String tableName, String rowkey, String family, String column) {
+        return submit(() -> delegate.getColumn(tableName, rowkey, family, column));
+    }
+
+    public <T> CompletableFuture<MultiGetResult<T>> getManyToClass(Class<T> c, String tableName, Collection<String> rowkeys) {
+        return submit(() -> delegate.getManyToClass(c, tableName, rowkeys));
+    }
+
+    public CompletableFuture<MultiGetResult<Map<String, Object>>> getManyToMap(String tableName, Collection<String> rowkeys) {
+        return submit(() -> delegate.getManyToMap(tableName, rowkeys));
+    }
+
+    public CompletableFuture<Object> createPro(Object pojo, String tableName, String column, String rowkey) {
+        return submit(() -> delegate.createPro(pojo, tableName, column, rowkey));
+    }
+
+    public CompletableFuture<Integer> createProBatch(Collection<?> pojos, String tableName, String column,
+                                                     Function<Object, String> rowkeyOf) {
+        return submit(() -> delegate.createProBatch(pojos, tableName, column, rowkeyOf));
+    }
+
+    public <T> CompletableFuture<List<T>> searchAll(String tableName, Class<T> c, Projection projection) {
+        return submit(() -> delegate.searchAll(tableName, c, projection));
+    }
+
+    public <T> CompletableFuture<List<T>> findByRowRange(Class<T> c, String tableName, String startRow, String endRow) {
+        return submit(() -> delegate.findByRowRange(c, tableName, startRow, endRow));
+    }
+
+    public <T> CompletableFuture<List<T>> getListByCondition(Class<T> c, String tableName, FilterList filterList) {
+        return submit(() -> delegate.getListByCondition(c, tableName, filterList));
+    }
+
+    public <T> CompletableFuture<List<T>> searchAllByFilter(Class<T> clazz, String tableName, SingleColumnValueFilter scvf) {
+        return submit(() -> delegate.searchAllByFilter(clazz, tableName, scvf));
+    }
+
+    /**
+     * 使用默认超时异步执行任意操作
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return submit(task, timeoutMillis);
+    }
+
+    /**
+     * 异步执行任意操作
+     *
+     * @param timeoutMillis 超时毫秒数,0表示不超时
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task, long timeoutMillis) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (!inFlight.tryAcquire()) {
+            result.completeExceptionally(new RejectedExecutionException(
+                    "too many in-flight hbase requests, limit " + maxInFlight));
+            return result;
+        }
+        //执行和排队时取消只有一方能拿到,拿到的一方负责释放名额
+        AtomicBoolean claimed = new AtomicBoolean();
+        FutureTask<Void> running = new FutureTask<Void>(() -> {
+            if (!claimed.compareAndSet(false, true)) return;
+            try {
+                result.complete(task.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                inFlight.release();
+            }
+        }, null) {
+            @Override
+            protected void done() {
+                //还没开始执行就被取消
+                if (isCancelled() && claimed.compareAndSet(false, true)) {
+                    inFlight.release();
+                }
+            }
+        };
+        try {
+            executor.execute(running);
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            result.completeExceptionally(e);
+            return result;
+        }
+        ScheduledFuture<?> timeout = timeoutMillis <= 0 ? null : timer.schedule(() -> {
+            if (result.completeExceptionally(new TimeoutException("hbase request timed out after " + timeoutMillis + "ms"))) {
+                running.cancel(true);
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        if (timeout != null) {
+            result.whenComplete((value, error) -> timeout.cancel(false));
+        }
+        return result;
+    }
+
+    /**
+     * 当前在途请求数
+     */
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        executor.shutdownNow();
+    }
+}
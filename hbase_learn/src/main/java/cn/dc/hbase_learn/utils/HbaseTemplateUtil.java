@@ -1,58 +1,128 @@
 package cn.dc.hbase_learn.utils;
 
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
+import cn.dc.hbase_learn.aggregate.HbaseAggregator;
+import cn.dc.hbase_learn.bulkload.HFileBulkLoader;
+import cn.dc.hbase_learn.cache.RowCache;
+import cn.dc.hbase_learn.index.SecondaryIndexManager;
+import cn.dc.hbase_learn.mapper.PojoMapperRegistry;
+import cn.dc.hbase_learn.metrics.HbaseMetrics;
+import cn.dc.hbase_learn.pool.HbaseConnectionPool;
+import cn.dc.hbase_learn.rowkey.RowKeyStrategy;
+import cn.dc.hbase_learn.rowkey.RowKeyStrategyRegistry;
+import cn.dc.hbase_learn.scan.MergingScanIterator;
+import cn.dc.hbase_learn.scan.ParallelScanner;
+import cn.dc.hbase_learn.scan.Projection;
+import cn.dc.hbase_learn.scan.ScanIterator;
+import cn.dc.hbase_learn.scan.ScanProfiles;
+import cn.dc.hbase_learn.schema.FamilySpec;
+import cn.dc.hbase_learn.schema.TableSpec;
 import org.apache.commons.lang.StringUtils;
-import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.*;
 import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.filter.FilterList;
 import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 import org.apache.hadoop.hbase.util.Bytes;
-import org.springframework.beans.BeanUtils;
-import org.springframework.beans.BeanWrapper;
-import org.springframework.beans.PropertyAccessorFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.hadoop.hbase.HbaseSystemException;
 import org.springframework.data.hadoop.hbase.HbaseTemplate;
 import org.springframework.data.hadoop.hbase.RowMapper;
 import org.springframework.data.hadoop.hbase.TableCallback;
 
-import java.beans.PropertyDescriptor;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 public class HbaseTemplateUtil {
 
+    private static final Logger log = LoggerFactory.getLogger(HbaseTemplateUtil.class);
+
+    /*createProBatch每批的行数*/
+    private static final int BATCH_SIZE = 1000;
+
+    /*原样返回Result,交给缓存或调用方再映射*/
+    private static final RowMapper<Result> RAW_RESULT = (result, rowNum) -> result;
+
+    /*一行转map,key为 列族_列名,cell按列族排序,同一列族的前缀只解码一次*/
+    private static final RowMapper<Map<String, Object>> MAP_MAPPER = new RowMapper<Map<String, Object>>() {
+        @Override
+        public Map<String, Object> mapRow(Result result, int i) throws Exception {
+            Cell[] cells = result.rawCells();
+            Map<String, Object> map = new HashMap<String, Object>();
+            if (cells != null && cells.length > 0) {
+                Cell previous = null;
+                String prefix = null;
+                for (Cell cell : cells) {
+                    if (previous == null || !CellUtil.matchingFamily(previous, cell)) {
+                        prefix = Bytes.toString(cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength()) + "_";
+                    }
+                    previous = cell;
+                    map.put(prefix + Bytes.toString(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength()),
+                            Bytes.toString(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength()));
+                }
+            }
+            return map;
+        }
+    };
+
     @Autowired
     private HbaseTemplate hbaseTemplate;
 
     @Autowired
-    private Configuration configuration;
+    private HbaseConnectionPool connectionPool;
+
+    @Autowired
+    private PojoMapperRegistry mapperRegistry;
+
+    @Autowired
+    private ParallelScanner parallelScanner;
 
-    ThreadLocal<Connection> threadLocalConn = new ThreadLocal<>();
+    @Autowired
+    private RowCache rowCache;
+
+    @Autowired
+    private SecondaryIndexManager indexManager;
+
+    @Autowired
+    private RowKeyStrategyRegistry rowKeys;
+
+    @Autowired
+    private HbaseMetrics metrics;
+
+    @Autowired
+    private HbaseAggregator aggregator;
+
+    @Autowired
+    private HFileBulkLoader bulkLoader;
 
-    /*获取连接*/
+    @Autowired
+    private ScanProfiles scanProfiles;
+
+    /*获取连接,连接是共享的,调用方不要关闭*/
     public Connection getConn() {
-        Connection connection = threadLocalConn.get();
-        if (connection == null) {
-            try {
-                connection = ConnectionFactory.createConnection(configuration);
-                threadLocalConn.set(connection);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        try {
+            return connectionPool.borrow();
+        } catch (IOException e) {
+            log.error("borrow hbase connection failed", e);
         }
-        return connection;
+        return null;
     }
 
-    /*关闭连接*/
+    /*
+    连接由连接池统一管理,容器关闭时释放,这里不再需要关闭
+     */
+    @Deprecated
     public void closeConn() throws IOException {
-        Connection connection = threadLocalConn.get();
-        if (connection == null) return;
-        connection.close();
     }
 
     /**
@@ -63,25 +133,67 @@ public class HbaseTemplateUtil {
      * @return
      */
     public boolean createTable(String tableName, String... family) {
-        HBaseAdmin admin;
-        try {
-            // 从hbaseTemplate 获取configuration对象,用来初始化admin
+        return createTable(TableSpec.of(tableName).families(family));
+    }
 
-            admin = (HBaseAdmin) getConn().getAdmin();
-            HTableDescriptor tableDescriptor = new HTableDescriptor(TableName.valueOf(tableName));
-            for (int i = 0; i < family.length; i++) {
-                tableDescriptor.addFamily(new HColumnDescriptor(family[i]));
+    /**
+     * 按配置建表,可以预分区,设置列族的压缩、编码、布隆过滤器等
+     *
+     * @return 表是否存在
+     */
+    public boolean createTable(TableSpec spec) {
+        return timed("createTable", spec.getTableName().getNameAsString(), op -> {
+            try (Admin admin = connectionPool.borrow().getAdmin()) {
+                HTableDescriptor tableDescriptor = spec.toDescriptor();
+                if (spec.getSplitKeys() != null) {
+                    admin.createTable(tableDescriptor, spec.getSplitKeys());
+                } else if (spec.getStartKey() != null) {
+                    admin.createTable(tableDescriptor, spec.getStartKey(), spec.getEndKey(), spec.getRegions());
+                } else {
+                    admin.createTable(tableDescriptor);
+                }
+                return admin.tableExists(spec.getTableName());
+            } catch (IOException e) {
+                failed(op, e);
             }
-            admin.createTable(tableDescriptor);
-            return admin.tableExists(tableName);
-        } catch (MasterNotRunningException e) {
-            e.printStackTrace();
-        } catch (ZooKeeperConnectionException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return false;
+            return false;
+        });
+    }
+
+    /**
+     * 按配置修改已有表的列族:已有的列族只覆盖spec中设置过的项,没有的列族新增,spec中没有的列族不动
+     * spec中的协处理器没有注册的补上
+     * 预分区设置不生效,修改后新写入的HFile使用新设置,老文件在compaction后生效
+     */
+    public boolean updateTable(TableSpec spec) {
+        return timed("updateTable", spec.getTableName().getNameAsString(), op -> {
+            try (Admin admin = connectionPool.borrow().getAdmin()) {
+                HTableDescriptor current = admin.getTableDescriptor(spec.getTableName());
+                for (FamilySpec family : spec.getFamilies()) {
+                    HColumnDescriptor existing = current.getFamily(Bytes.toBytes(family.getName()));
+                    if (existing == null) {
+                        admin.addColumn(spec.getTableName(), family.toDescriptor());
+                    } else {
+                        admin.modifyColumn(spec.getTableName(), family.applyTo(new HColumnDescriptor(existing)));
+                    }
+                }
+                //列族已经改过,在最新的描述上补协处理器,避免把列族改回去
+                HTableDescriptor latest = null;
+                for (String className : spec.getCoprocessors()) {
+                    if (!current.hasCoprocessor(className)) {
+                        if (latest == null) latest = admin.getTableDescriptor(spec.getTableName());
+                        latest.addCoprocessor(className);
+                    }
+                }
+                if (latest != null) {
+                    admin.modifyTable(spec.getTableName(), latest);
+                }
+                return true;
+            } catch (IOException e) {
+                failed(op, e);
+            }
+            return false;
+        });
     }
 
     /**
@@ -92,21 +204,24 @@ public class HbaseTemplateUtil {
      * @return
      */
     public <T> List<T> searchAll(String tableName, Class<T> c) {
-        return hbaseTemplate.find(tableName, new Scan(), new RowMapper<T>() {
-            @Override
-            public T mapRow(Result result, int rowNum) throws Exception {
-                T pojo = c.newInstance();
-                BeanWrapper beanWrapper = PropertyAccessorFactory.forBeanPropertyAccess(pojo);
-                List<Cell> ceList = result.listCells();
-                for (Cell cellItem : ceList) {
-                    String cellName = new String(CellUtil.cloneQualifier(cellItem));
-                    if (!"class".equals(cellName)) {
-                        beanWrapper.setPropertyValue(cellName, new String(CellUtil.cloneValue(cellItem)));
-                    }
-                }
-                return pojo;
-            }
-        });
+        return searchAll(tableName, c, Projection.DEFAULT);
+    }
+
+    /**
+     * Scan 查询所有的hbase数据,只取回投影中的列
+     *
+     * @param projection 列投影,Projection.family(family)表示限定列族、列取目标类的属性
+     */
+    public <T> List<T> searchAll(String tableName, Class<T> c, Projection projection) {
+        return searchAll(tableName, c, projection, null);
+    }
+
+    /**
+     * @param profile hbase.scan.profiles中的scan参数,null使用全表scan的默认profile
+     */
+    public <T> List<T> searchAll(String tableName, Class<T> c, Projection projection, String profile) {
+        return timed("searchAll", tableName,
+                op -> find(tableName, tune(project(new Scan(), c, projection), profile), op.wrap(mapperRegistry.get(c))));
     }
 
     /**
@@ -116,22 +231,86 @@ public class HbaseTemplateUtil {
         if (pojo == null || StringUtils.isBlank(tableName) || StringUtils.isBlank(column)) {
             return null;
         }
-        return hbaseTemplate.execute(tableName, new TableCallback<Object>() {
+        return timed("createPro", tableName, op -> hbaseTemplate.execute(tableName, new TableCallback<Object>() {
             @Override
             public Object doInTable(HTableInterface table) throws Throwable {
-                PropertyDescriptor[] pds = BeanUtils.getPropertyDescriptors(pojo.getClass());
-                BeanWrapper beanWrapper = PropertyAccessorFactory.forBeanPropertyAccess(pojo);
-                Put put = new Put(Bytes.toBytes(rowkey));
-                for (PropertyDescriptor propertyDescriptor : pds) {
-                    String properName = propertyDescriptor.getName();
-                    String value = beanWrapper.getPropertyValue(properName).toString();
-                    if (!StringUtils.isBlank(value)) {
-                        put.add(Bytes.toBytes(column), Bytes.toBytes(properName), Bytes.toBytes(value));
-                    }
-                }
+                Put put = mapperRegistry.get(pojo.getClass()).toPut(pojo, Bytes.toBytes(column),
+                        Bytes.toBytes(rowKeys.forTable(tableName).encode(rowkey)));
+                indexManager.writeIndex(tableName, Collections.singletonList(put));
                 table.put(put);
+                rowCache.invalidate(tableName, put);
+                op.mutation(put);
                 return null;
             }
+        }));
+    }
+
+    /**
+     * 批量插入,按batchSize分批,每批一次按region server分组的批量RPC
+     *
+     * @param pojos    数据
+     * @param column   列族
+     * @param rowkeyOf 从pojo取rowkey
+     * @return 写入的行数
+     */
+    public int createProBatch(Collection<?> pojos, String tableName, String column, Function<Object, String> rowkeyOf) {
+        if (pojos == null || pojos.isEmpty() || StringUtils.isBlank(tableName) || StringUtils.isBlank(column)) {
+            return 0;
+        }
+        byte[] family = Bytes.toBytes(column);
+        RowKeyStrategy strategy = rowKeys.forTable(tableName);
+        return timed("createProBatch", tableName, op -> hbaseTemplate.execute(tableName, new TableCallback<Integer>() {
+            @Override
+            public Integer doInTable(HTableInterface table) throws Throwable {
+                List<Put> puts = new ArrayList<>(Math.min(pojos.size(), BATCH_SIZE));
+                int written = 0;
+                for (Object pojo : pojos) {
+                    Put put = mapperRegistry.get(pojo.getClass()).toPut(pojo, family, Bytes.toBytes(strategy.encode(rowkeyOf.apply(pojo))));
+                    if (put.isEmpty()) continue;
+                    puts.add(put);
+                    if (puts.size() >= BATCH_SIZE) {
+                        written += flush(table, puts);
+                        puts = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                if (!puts.isEmpty()) {
+                    written += flush(table, puts);
+                }
+                return written;
+            }
+
+            private int flush(HTableInterface table, List<Put> puts) throws IOException {
+                indexManager.writeIndex(tableName, puts);
+                table.put(puts);
+                for (Put put : puts) {
+                    rowCache.invalidate(tableName, put);
+                    op.mutation(put);
+                }
+                return puts.size();
+            }
+        }));
+    }
+
+    /**
+     * 批量导入,规则与createProBatch相同,但直接生成HFile加载进region,不经过WAL和memstore
+     * 适合大批量回填,数据只在加载完成后一次性可见,见HFileBulkLoader
+     *
+     * @param pojos    数据,流式读取,不需要全部放进内存
+     * @param column   列族
+     * @param rowkeyOf 从pojo取rowkey
+     * @return 导入的行数,失败返回-1
+     */
+    public long bulkLoad(Stream<?> pojos, String tableName, String column, Function<Object, String> rowkeyOf) {
+        if (pojos == null || StringUtils.isBlank(tableName) || StringUtils.isBlank(column)) {
+            return 0;
+        }
+        return timed("bulkLoad", tableName, op -> {
+            try {
+                return bulkLoader.load(tableName, column, pojos.iterator(), rowkeyOf);
+            } catch (IOException e) {
+                failed(op, e);
+            }
+            return -1L;
         });
     }
 
@@ -147,28 +326,22 @@ public class HbaseTemplateUtil {
         if (c == null || StringUtils.isBlank(tableName) || StringUtils.isBlank(rowkey)) {
             return null;
         }
-        return hbaseTemplate.get(tableName, rowkey, new RowMapper<T>() {
-            public T mapRow(Result result, int rowNum) throws Exception {
-                List<Cell> ceList = result.listCells();
-                JSONObject obj = new JSONObject();
-                T item = c.newInstance();
-                if (ceList != null && ceList.size() > 0) {
-                    for (Cell cell : ceList) {
-//                        cell.getTimestamp();
-//                        //rowKey
-//                        CellUtil.cloneRow(cell);
-                        obj.put(
-                                Bytes.toString(cell.getQualifierArray(), cell.getQualifierOffset(),
-                                        cell.getQualifierLength()),
-                                Bytes.toString(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength()));
-                    }
-                } else {
-                    return null;
-                }
-                item = JSON.parseObject(obj.toJSONString(), c);
-                return item;
-            }
-        });
+        return timed("getOneToClass", tableName, op -> mapRow(op.wrap(mapperRegistry.get(c)), getRow(tableName, rowkey)));
+    }
+
+    /**
+     * 按时间范围读一行转object,每列取范围内最新的版本,比如ReadOptions.asOf(t)读t时刻的快照
+     * options中的maxVersions不生效;不是最新版本的读取不经过读缓存
+     */
+    public <T> T getOneToClass(Class<T> c, String tableName, String rowkey, ReadOptions options) {
+        if (options == null || options.isLatest()) {
+            return getOneToClass(c, tableName, rowkey);
+        }
+        if (c == null || StringUtils.isBlank(tableName) || StringUtils.isBlank(rowkey)) {
+            return null;
+        }
+        return timed("getOneToClass", tableName,
+                op -> mapRow(op.wrap(mapperRegistry.get(c)), getVersionedRow(tableName, rowkey, null, null, options.maxVersions(1))));
     }
 
     /**
@@ -181,6 +354,21 @@ public class HbaseTemplateUtil {
      * @return
      */
     public <T> List<T> getListByCondition(Class<T> c, String tableName, FilterList filterList) {
+        return getListByCondition(c, tableName, filterList, Projection.DEFAULT);
+    }
+
+    /**
+     * 根据表名组合查询,只取回投影中的列,过滤条件用到的列会自动加入投影
+     * 条件中有命中二级索引(已完成reconcile)的等值过滤时按索引查询,不做全表scan
+     */
+    public <T> List<T> getListByCondition(Class<T> c, String tableName, FilterList filterList, Projection projection) {
+        return getListByCondition(c, tableName, filterList, projection, null);
+    }
+
+    /**
+     * @param profile hbase.scan.profiles中的scan参数,null使用全表scan的默认profile,走索引时不使用
+     */
+    public <T> List<T> getListByCondition(Class<T> c, String tableName, FilterList filterList, Projection projection, String profile) {
         if (c == null || StringUtils.isBlank(tableName)) {
             return null;
         }
@@ -201,22 +389,14 @@ public class HbaseTemplateUtil {
 //                    CompareFilter.CompareOp.EQUAL,Bytes.toBytes(target)));
 //        }
 //        FilterList filterList=new FilterList(list);
-        Scan scan = new Scan();
-        scan.setFilter(filterList);
-        return hbaseTemplate.find(tableName, scan, new RowMapper<T>() {
-            @Override
-            public T mapRow(Result result, int rowNum) throws Exception {
-                T pojo = c.newInstance();
-                BeanWrapper beanWrapper = PropertyAccessorFactory.forBeanPropertyAccess(pojo);
-                List<Cell> ceList = result.listCells();
-                for (Cell cellItem : ceList) {
-                    String cellName = new String(CellUtil.cloneQualifier(cellItem));
-                    if (!"class".equals(cellName)) {
-                        beanWrapper.setPropertyValue(cellName, new String(CellUtil.cloneValue(cellItem)));
-                    }
-                }
-                return pojo;
+        return timed("getListByCondition", tableName, op -> {
+            List<T> indexed = findByIndex(op, c, tableName, filterList, projection);
+            if (indexed != null) {
+                return indexed;
             }
+            Scan scan = new Scan();
+            scan.setFilter(filterList);
+            return find(tableName, tune(project(scan, c, projection), profile), op.wrap(mapperRegistry.get(c)));
         });
     }
 
@@ -225,21 +405,7 @@ public class HbaseTemplateUtil {
      * 通过表名和rowkey获取一行map数据
      */
     public Map<String, Object> getOneToMap(String tableName, String rowName) {
-        return hbaseTemplate.get(tableName, rowName, new RowMapper<Map<String, Object>>() {
-            @Override
-            public Map<String, Object> mapRow(Result result, int i) throws Exception {
-                List<Cell> ceList = result.listCells();
-                Map<String, Object> map = new HashMap<String, Object>();
-                if (ceList != null && ceList.size() > 0) {
-                    for (Cell cell : ceList) {
-                        map.put(Bytes.toString(cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength()) +
-                                        "_" + Bytes.toString(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength()),
-                                Bytes.toString(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength()));
-                    }
-                }
-                return map;
-            }
-        });
+        return timed("getOneToMap", tableName, op -> mapRow(op.wrap(MAP_MAPPER), getRow(tableName, rowName)));
     }
 
     /**
@@ -250,23 +416,236 @@ public class HbaseTemplateUtil {
                 || StringUtils.isBlank(rowkey) || StringUtils.isBlank(column)) {
             return null;
         }
-        return hbaseTemplate.get(tableName, rowkey, family, column, new RowMapper<String>() {
+        return timed("getColumn", tableName, op -> mapRow(op.wrap(new RowMapper<String>() {
             public String mapRow(Result result, int rowNum) throws Exception {
-                List<Cell> ceList = result.listCells();
-                String res = "";
-                if (ceList != null && ceList.size() > 0) {
-                    for (Cell cell : ceList) {
-                        res =
-                                Bytes.toString(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+                //多个cell时取最后一个,只解码这一个
+                Cell[] cells = result.rawCells();
+                if (cells == null || cells.length == 0) {
+                    return "";
+                }
+                Cell cell = cells[cells.length - 1];
+                return Bytes.toString(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+            }
+        }), getRow(tableName, rowkey, family, column)));
+    }
+
+    /**
+     * 读一行在时间范围内的多个版本,不经过读缓存
+     *
+     * @return 行不存在或范围内没有数据时返回null
+     */
+    public VersionedRow getVersions(String tableName, String rowkey, ReadOptions options) {
+        if (StringUtils.isBlank(tableName) || StringUtils.isBlank(rowkey) || options == null) {
+            return null;
+        }
+        return timed("getVersions", tableName, op -> {
+            Result result = getVersionedRow(tableName, rowkey, null, null, options);
+            op.result(result);
+            return VersionedRow.of(rowkey, result);
+        });
+    }
+
+    /**
+     * 读一列在时间范围内的多个版本,新的在前
+     */
+    public List<VersionedRow.Version> getColumnVersions(String tableName, String rowkey, String family, String column, ReadOptions options) {
+        if (StringUtils.isBlank(tableName) || StringUtils.isBlank(family)
+                || StringUtils.isBlank(rowkey) || StringUtils.isBlank(column) || options == null) {
+            return null;
+        }
+        return timed("getColumnVersions", tableName, op -> {
+            Result result = getVersionedRow(tableName, rowkey, family, column, options);
+            op.result(result);
+            VersionedRow row = VersionedRow.of(rowkey, result);
+            return row == null ? Collections.<VersionedRow.Version>emptyList() : row.getVersions(family, column);
+        });
+    }
+
+    /**
+     * 范围scan读取多个版本,加盐表按原rowkey顺序返回
+     *
+     * @param startRow   起始rowkey(包含),null表示从头开始
+     * @param stopRow    结束rowkey(不包含),null表示到末尾
+     * @param filterList 可以为null,多版本时值过滤器一般需要setLatestVersionOnly(false)
+     */
+    public List<VersionedRow> findVersions(String tableName, String startRow, String stopRow, FilterList filterList, ReadOptions options) {
+        if (StringUtils.isBlank(tableName) || options == null) {
+            return null;
+        }
+        Scan scan = new Scan();
+        if (StringUtils.isNotBlank(startRow)) {
+            scan.setStartRow(Bytes.toBytes(startRow));
+        }
+        if (StringUtils.isNotBlank(stopRow)) {
+            scan.setStopRow(Bytes.toBytes(stopRow));
+        }
+        scan.setFilter(filterList);
+        RowKeyStrategy strategy = rowKeys.forTable(tableName);
+        RowMapper<VersionedRow> rowMapper = (result, rowNum) -> VersionedRow.of(strategy.decode(Bytes.toString(result.getRow())), result);
+        return timed("findVersions", tableName, op -> {
+            try {
+                options.apply(tune(scan, null));
+            } catch (IOException e) {
+                failed(op, e);
+                return null;
+            }
+            return find(tableName, scan, op.wrap(rowMapper));
+        });
+    }
+
+    /*
+    按ReadOptions get一行,family为null时读整行
+     */
+    private Result getVersionedRow(String tableName, String rowkey, String family, String column, ReadOptions options) {
+        byte[] physical = Bytes.toBytes(rowKeys.forTable(tableName).encode(rowkey));
+        return hbaseTemplate.execute(tableName, new TableCallback<Result>() {
+            @Override
+            public Result doInTable(HTableInterface table) throws Throwable {
+                Get get = options.apply(new Get(physical));
+                if (family != null) {
+                    get.addColumn(Bytes.toBytes(family), Bytes.toBytes(column));
+                }
+                return table.get(get);
+            }
+        });
+    }
+
+    /**
+     * 批量按rowkey查询,一次批量RPC(按region server分组)代替逐条get
+     *
+     * @param rowkeys rowkey集合,重复的只查一次
+     * @return 按输入顺序排列的结果,不存在的rowkey在missing中单独列出
+     */
+    public <T> MultiGetResult<T> getManyToClass(Class<T> c, String tableName, Collection<String> rowkeys) {
+        if (c == null || StringUtils.isBlank(tableName) || rowkeys == null) {
+            return null;
+        }
+        return timed("getManyToClass", tableName, op -> multiGet(tableName, rowkeys, op.wrap(mapperRegistry.get(c))));
+    }
+
+    /**
+     * getManyToClass的map版本,map的key同getOneToMap
+     */
+    public MultiGetResult<Map<String, Object>> getManyToMap(String tableName, Collection<String> rowkeys) {
+        if (StringUtils.isBlank(tableName) || rowkeys == null) {
+            return null;
+        }
+        return timed("getManyToMap", tableName, op -> multiGet(tableName, rowkeys, op.wrap(MAP_MAPPER)));
+    }
+
+    private <T> MultiGetResult<T> multiGet(String tableName, Collection<String> rowkeys, RowMapper<T> rowMapper) {
+        RowKeyStrategy strategy = rowKeys.forTable(tableName);
+        Map<String, Result> results = new LinkedHashMap<>();
+        List<String> toFetch = new ArrayList<>();
+        for (String rowkey : rowkeys) {
+            if (results.containsKey(rowkey)) continue;
+            Result cached = rowCache.getIfPresent(tableName, strategy.encode(rowkey), null);
+            results.put(rowkey, cached);
+            if (cached == null) toFetch.add(rowkey);
+        }
+        if (!toFetch.isEmpty()) {
+            hbaseTemplate.execute(tableName, new TableCallback<Object>() {
+                @Override
+                public Object doInTable(HTableInterface table) throws Throwable {
+                    for (int from = 0; from < toFetch.size(); from += BATCH_SIZE) {
+                        List<String> batch = toFetch.subList(from, Math.min(from + BATCH_SIZE, toFetch.size()));
+                        List<Get> gets = new ArrayList<>(batch.size());
+                        for (String rowkey : batch) {
+                            gets.add(new Get(Bytes.toBytes(strategy.encode(rowkey))));
+                        }
+                        Result[] fetched = table.get(gets);
+                        for (int i = 0; i < fetched.length; i++) {
+                            results.put(batch.get(i), fetched[i]);
+                            rowCache.put(tableName, Bytes.toString(gets.get(i).getRow()), null, fetched[i]);
+                        }
                     }
+                    return null;
                 }
-                return res;
+            });
+        }
+        MultiGetResult<T> multiGetResult = new MultiGetResult<>();
+        results.forEach((rowkey, result) -> {
+            if (result == null || result.isEmpty()) {
+                multiGetResult.addMissing(rowkey);
+            } else {
+                multiGetResult.addFound(rowkey, mapRow(rowMapper, result));
             }
         });
+        return multiGetResult;
+    }
+
+    /*读一行,开启读缓存时先查缓存,缓存按物理rowkey存放*/
+    private Result getRow(String tableName, String rowkey) {
+        String physical = rowKeys.forTable(tableName).encode(rowkey);
+        return rowCache.get(tableName, physical, null,
+                () -> hbaseTemplate.get(tableName, physical, RAW_RESULT));
+    }
+
+    private Result getRow(String tableName, String rowkey, String family, String column) {
+        String physical = rowKeys.forTable(tableName).encode(rowkey);
+        return rowCache.get(tableName, physical, family + ":" + column,
+                () -> hbaseTemplate.get(tableName, physical, family, column, RAW_RESULT));
+    }
+
+    /*
+    执行scan,加盐的表在每个桶里各scan一次,再按逻辑rowkey合并
+     */
+    private <T> List<T> find(String tableName, Scan scan, RowMapper<T> rowMapper) {
+        RowKeyStrategy strategy = rowKeys.forTable(tableName);
+        if (strategy.isIdentity()) {
+            return hbaseTemplate.find(tableName, scan, rowMapper);
+        }
+        try {
+            return findFanOut(tableName, scan, rowMapper, strategy);
+        } catch (IOException e) {
+            throw new HbaseSystemException(e);
+        }
+    }
+
+    private <T> List<T> findFanOut(String tableName, Scan scan, RowMapper<T> rowMapper, RowKeyStrategy strategy) throws IOException {
+        List<Result> merged = new ArrayList<>();
+        for (List<Result> bucket : parallelScanner.scanEach(tableName, strategy.fanOut(scan), RAW_RESULT)) {
+            merged.addAll(bucket);
+        }
+        //每个桶内已经有序,TimSort合并有序段的代价接近k路归并
+        merged.sort(strategy.resultOrder(scan.isReversed()));
+        List<T> rows = new ArrayList<>(merged.size());
+        for (Result result : merged) {
+            rows.add(mapRow(rowMapper, result));
+        }
+        return rows;
+    }
+
+    /*并行scan,加盐的表按桶并行,不再按region切分*/
+    private <T> List<T> findParallel(String tableName, Scan scan, RowMapper<T> rowMapper, boolean ordered) throws IOException {
+        RowKeyStrategy strategy = rowKeys.forTable(tableName);
+        if (strategy.isIdentity()) {
+            return parallelScanner.scan(tableName, scan, rowMapper, ordered);
+        }
+        return findFanOut(tableName, scan, rowMapper, strategy);
+    }
+
+    private static <T> T mapRow(RowMapper<T> rowMapper, Result result) {
+        try {
+            return rowMapper.mapRow(result, 0);
+        } catch (Exception e) {
+            throw new HbaseSystemException(e);
+        }
     }
 
 
     public <T> List<T> findByRowRange(Class<T> c, String tableName, String startRow, String endRow) {
+        return findByRowRange(c, tableName, startRow, endRow, Projection.DEFAULT);
+    }
+
+    public <T> List<T> findByRowRange(Class<T> c, String tableName, String startRow, String endRow, Projection projection) {
+        return findByRowRange(c, tableName, startRow, endRow, projection, null);
+    }
+
+    /**
+     * @param profile hbase.scan.profiles中的scan参数,null使用范围scan的默认profile
+     */
+    public <T> List<T> findByRowRange(Class<T> c, String tableName, String startRow, String endRow, Projection projection, String profile) {
         if (c == null || StringUtils.isBlank(tableName) || StringUtils.isBlank(startRow)
                 || StringUtils.isBlank(endRow)) {
             return null;
@@ -274,25 +653,90 @@ public class HbaseTemplateUtil {
         Scan scan = new Scan();
         scan.setStartRow(Bytes.toBytes(startRow));
         scan.setStopRow(Bytes.toBytes(endRow));
-        scan.setCacheBlocks(false);
-        scan.setCaching(2000);
-        return hbaseTemplate.find(tableName, scan, new RowMapper<T>() {
-            @Override
-            public T mapRow(Result result, int rowNum) throws Exception {
-                T pojo = c.newInstance();
-                BeanWrapper beanWrapper = PropertyAccessorFactory.forBeanPropertyAccess(pojo);
-                List<Cell> ceList = result.listCells();
-                for (Cell cellItem : ceList) {
-                    String cellName = new String(CellUtil.cloneQualifier(cellItem));
-                    if (!"class".equals(cellName)) {
-                        beanWrapper.setPropertyValue(cellName, new String(CellUtil.cloneValue(cellItem)));
-                    }
-                }
-                return pojo;
+        return timed("findByRowRange", tableName, op -> find(tableName, tune(project(scan, c, projection), profile), op.wrap(mapperRegistry.get(c))));
+    }
+
+    /**
+     * findByRowRange的并行版本,按region边界切分后并行scan
+     *
+     * @param ordered true按rowkey顺序返回,false按子区间完成顺序返回
+     */
+    public <T> List<T> findByRowRangeParallel(Class<T> c, String tableName, String startRow, String endRow, boolean ordered) {
+        if (c == null || StringUtils.isBlank(tableName) || StringUtils.isBlank(startRow)
+                || StringUtils.isBlank(endRow)) {
+            return null;
+        }
+        Scan scan = new Scan();
+        scan.setStartRow(Bytes.toBytes(startRow));
+        scan.setStopRow(Bytes.toBytes(endRow));
+        return timed("findByRowRangeParallel", tableName, op -> {
+            try {
+                return findParallel(tableName, tune(project(scan, c, Projection.DEFAULT), null), op.wrap(mapperRegistry.get(c)), ordered);
+            } catch (IOException e) {
+                failed(op, e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * searchAll的并行版本,每个region一个scanner,适合全表导出
+     */
+    public <T> List<T> searchAllParallel(String tableName, Class<T> c, boolean ordered) {
+        return timed("searchAllParallel", tableName, op -> {
+            try {
+                return findParallel(tableName, tune(project(new Scan(), c, Projection.DEFAULT), null), op.wrap(mapperRegistry.get(c)), ordered);
+            } catch (IOException e) {
+                failed(op, e);
             }
+            return null;
         });
     }
 
+    /**
+     * 流式scan,按批拉取,不把结果全部放进内存
+     * 调用方必须关闭返回的iterator,推荐try-with-resources
+     *
+     * @param scan 可以通过setCaching控制每批拉取的行数,未指定列时按目标类做投影
+     */
+    public <T> ScanIterator<T> iterate(Class<T> c, String tableName, Scan scan) throws IOException {
+        Scan projected = project(scan, c, Projection.DEFAULT);
+        RowKeyStrategy strategy = rowKeys.forTable(tableName);
+        if (strategy.isIdentity()) {
+            return new ScanIterator<>(connectionPool.borrow(), tableName, projected, mapperRegistry.get(c));
+        }
+        List<ScanIterator<Result>> buckets = new ArrayList<>();
+        try {
+            for (Scan bucket : strategy.fanOut(projected)) {
+                buckets.add(new ScanIterator<>(connectionPool.borrow(), tableName, bucket, RAW_RESULT));
+            }
+        } catch (IOException | RuntimeException e) {
+            for (ScanIterator<Result> opened : buckets) {
+                opened.close();
+            }
+            throw e;
+        }
+        return new MergingScanIterator<>(buckets, strategy.resultOrder(projected.isReversed()), mapperRegistry.get(c));
+    }
+
+    /**
+     * searchAll的流式版本,Stream需要关闭
+     */
+    public <T> Stream<T> streamAll(String tableName, Class<T> c) throws IOException {
+        return iterate(c, tableName, tune(new Scan(), null)).stream();
+    }
+
+    /**
+     * findByRowRange的流式版本,Stream需要关闭
+     */
+    public <T> Stream<T> streamByRowRange(Class<T> c, String tableName, String startRow, String endRow) throws IOException {
+        Scan scan = new Scan();
+        scan.setStartRow(Bytes.toBytes(startRow));
+        scan.setStopRow(Bytes.toBytes(endRow));
+        tune(scan, null);
+        return iterate(c, tableName, scan).stream();
+    }
+
     /**
      * *SingleColumnValueFilter scvf = new SingleColumnValueFilter(
      * Bytes.toBytes(family),  //搜索哪个列族
@@ -302,38 +746,235 @@ public class HbaseTemplateUtil {
      * scvf.setLatestVersionOnly(true); //属性设置为true时,如果查询的列族下,没有colume这个列,则不返回这行数据,反之就返回这行数据
      */
     public <T> List<T> searchAllByFilter(Class<T> clazz, String tableName, SingleColumnValueFilter scvf) {
-        Scan scan = new Scan();
-//        scan.addFamily(Bytes.toBytes(family));
-        scan.setFilter(scvf);
-        return hbaseTemplate.find(tableName, scan, new RowMapper<T>() {
+        return searchAllByFilter(clazz, tableName, scvf, Projection.DEFAULT);
+    }
+
+    /**
+     * 限定列族,只取回该列族下目标类的属性列
+     */
+    public <T> List<T> searchAllByFilter(Class<T> clazz, String tableName, String family, SingleColumnValueFilter scvf) {
+        return searchAllByFilter(clazz, tableName, scvf, Projection.family(family));
+    }
+
+    /**
+     * scvf是二级索引列上的等值条件时按索引查询,见SecondaryIndexManager
+     */
+    public <T> List<T> searchAllByFilter(Class<T> clazz, String tableName, SingleColumnValueFilter scvf, Projection projection) {
+        return searchAllByFilter(clazz, tableName, scvf, projection, null);
+    }
+
+    /**
+     * @param profile hbase.scan.profiles中的scan参数,null使用全表scan的默认profile,走索引时不使用
+     */
+    public <T> List<T> searchAllByFilter(Class<T> clazz, String tableName, SingleColumnValueFilter scvf, Projection projection, String profile) {
+        return timed("searchAllByFilter", tableName, op -> {
+            List<T> indexed = findByIndex(op, clazz, tableName, scvf, projection);
+            if (indexed != null) {
+                return indexed;
+            }
+            Scan scan = new Scan();
+            scan.setFilter(scvf);
+            return find(tableName, tune(project(scan, clazz, projection), profile), op.wrap(mapperRegistry.get(clazz)));
+        });
+    }
+
+    /*
+    过滤条件命中二级索引时,按索引取候选rowkey,再带原过滤条件批量get回表校验
+    不能走索引时返回null
+     */
+    private <T> List<T> findByIndex(HbaseMetrics.Op op, Class<T> c, String tableName, Filter filter, Projection projection) {
+        if (c == null || filter == null) {
+            return null;
+        }
+        List<byte[]> rowkeys;
+        try {
+            rowkeys = indexManager.lookup(tableName, filter);
+        } catch (IOException e) {
+            //索引不可用时退回全表scan
+            log.warn("secondary index lookup on {} failed, falling back to scan", tableName, e);
+            return null;
+        }
+        if (rowkeys == null) {
+            return null;
+        }
+        rowkeys.sort(rowKeys.forTable(tableName).logicalOrder());
+        Scan template = new Scan();
+        template.setFilter(filter);
+        project(template, c, projection);
+        RowMapper<T> rowMapper = op.wrap(mapperRegistry.get(c));
+        return hbaseTemplate.execute(tableName, new TableCallback<List<T>>() {
             @Override
-            public T mapRow(Result result, int rowNum) throws Exception {
-//        T pojo = c.newInstance();
-//        BeanWrapper beanWrapper = PropertyAccessorFactory.forBeanPropertyAccess(pojo);
-//        List<Cell> ceList = result.listCells();
-//        for (Cell cellItem : ceList) {
-//          String cellName = new String(CellUtil.cloneQualifier(cellItem));
-//          if (!"class".equals(cellName)) {
-//            beanWrapper.setPropertyValue(cellName, new String(CellUtil.cloneValue(cellItem)));
-//          }
-//        }
-//        return pojo;
-                List<Cell> ceList = result.listCells();
-                JSONObject obj = new JSONObject();
-                T item = clazz.newInstance();
-                if (ceList != null && ceList.size() > 0) {
-                    for (Cell cell : ceList) {
-                        obj.put(
-                                Bytes.toString(cell.getQualifierArray(), cell.getQualifierOffset(),
-                                        cell.getQualifierLength()),
-                                Bytes.toString(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength()));
+            public List<T> doInTable(HTableInterface table) throws Throwable {
+                List<T> found = new ArrayList<>();
+                for (int from = 0; from < rowkeys.size(); from += BATCH_SIZE) {
+                    List<byte[]> batch = rowkeys.subList(from, Math.min(from + BATCH_SIZE, rowkeys.size()));
+                    List<Get> gets = new ArrayList<>(batch.size());
+                    for (byte[] rowkey : batch) {
+                        Get get = new Get(rowkey);
+                        get.setFilter(template.getFilter());
+                        template.getFamilyMap().forEach((family, qualifiers) -> {
+                            if (qualifiers == null) {
+                                get.addFamily(family);
+                            } else {
+                                for (byte[] qualifier : qualifiers) {
+                                    get.addColumn(family, qualifier);
+                                }
+                            }
+                        });
+                        gets.add(get);
+                    }
+                    for (Result result : table.get(gets)) {
+                        if (result != null && !result.isEmpty()) {
+                            found.add(rowMapper.mapRow(result, found.size()));
+                        }
                     }
-                } else {
-                    return null;
                 }
-                item = JSON.parseObject(obj.toJSONString(), clazz);
-                return item;
+                return found;
             }
         });
     }
+
+    /**
+     * 给表注册聚合协处理器,count/sum/min/max才能在region server上执行
+     */
+    public boolean enableAggregation(String tableName) {
+        return timed("enableAggregation", tableName, op -> {
+            try {
+                aggregator.enable(tableName);
+                return true;
+            } catch (IOException e) {
+                failed(op, e);
+            }
+            return false;
+        });
+    }
+
+    /**
+     * 行数,在region server上计算
+     *
+     * @param startRow   起始rowkey(包含),null表示从头开始
+     * @param stopRow    结束rowkey(不包含),null表示到末尾
+     * @param filterList 可以为null
+     */
+    public Long count(String tableName, String startRow, String stopRow, FilterList filterList) {
+        Scan scan = aggregateScan(startRow, stopRow, filterList);
+        return timed("count", tableName, op -> {
+            try {
+                return aggregator.count(tableName, scan);
+            } catch (Throwable e) {
+                failed(op, e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 整数列的和,在region server上计算,没有数值时返回null
+     */
+    public Long sum(String tableName, String family, String column, String startRow, String stopRow, FilterList filterList) {
+        Scan scan = aggregateScan(startRow, stopRow, filterList);
+        return timed("sum", tableName, op -> {
+            try {
+                return aggregator.sum(tableName, scan, Bytes.toBytes(family), Bytes.toBytes(column));
+            } catch (Throwable e) {
+                failed(op, e);
+            }
+            return null;
+        });
+    }
+
+    public Long min(String tableName, String family, String column, String startRow, String stopRow, FilterList filterList) {
+        Scan scan = aggregateScan(startRow, stopRow, filterList);
+        return timed("min", tableName, op -> {
+            try {
+                return aggregator.min(tableName, scan, Bytes.toBytes(family), Bytes.toBytes(column));
+            } catch (Throwable e) {
+                failed(op, e);
+            }
+            return null;
+        });
+    }
+
+    public Long max(String tableName, String family, String column, String startRow, String stopRow, FilterList filterList) {
+        Scan scan = aggregateScan(startRow, stopRow, filterList);
+        return timed("max", tableName, op -> {
+            try {
+                return aggregator.max(tableName, scan, Bytes.toBytes(family), Bytes.toBytes(column));
+            } catch (Throwable e) {
+                failed(op, e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 按列值分组计数,只取回分组列
+     *
+     * @param keyType 分组列的值类型,按当前的ValueCodec解码
+     */
+    public <K> Map<K, Long> groupCount(Class<K> keyType, String tableName, String family, String column,
+                                       String startRow, String stopRow, FilterList filterList) {
+        Scan scan = aggregateScan(startRow, stopRow, filterList);
+        return timed("groupCount", tableName, op -> {
+            try {
+                return aggregator.<K>groupCount(tableName, scan, Bytes.toBytes(family), Bytes.toBytes(column),
+                        mapperRegistry.getCodec().decoder(keyType));
+            } catch (IOException e) {
+                failed(op, e);
+            }
+            return null;
+        });
+    }
+
+    private Scan aggregateScan(String startRow, String stopRow, FilterList filterList) {
+        Scan scan = new Scan();
+        if (StringUtils.isNotBlank(startRow)) {
+            scan.setStartRow(Bytes.toBytes(startRow));
+        }
+        if (StringUtils.isNotBlank(stopRow)) {
+            scan.setStopRow(Bytes.toBytes(stopRow));
+        }
+        scan.setFilter(filterList);
+        return tune(scan, null);
+    }
+
+    /*
+    执行一次操作并记录指标,异常记到错误计数后原样抛出
+     */
+    private <T> T timed(String operation, String tableName, Function<HbaseMetrics.Op, T> body) {
+        HbaseMetrics.Op op = metrics.start(operation, tableName);
+        try {
+            return body.apply(op);
+        } catch (RuntimeException | Error e) {
+            op.error(e);
+            throw e;
+        } finally {
+            op.end();
+        }
+    }
+
+    /*吞掉异常的老接口:记日志和错误计数,由调用方返回null或false*/
+    private static void failed(HbaseMetrics.Op op, Throwable e) {
+        if (e instanceof Error) throw (Error) e;
+        log.error("hbase {} on {} failed", op.getOperation(), op.getTableName(), e);
+        op.error(e);
+    }
+
+    /*
+    按profile设置caching等参数,要在设置范围之后调用(按是否限定范围选默认profile)
+    这里的结果都按整行映射,不设置batch,宽行不会被拆成多个只有部分属性的对象
+     */
+    private Scan tune(Scan scan, String profile) {
+        return scanProfiles.applyWholeRows(scan, profile);
+    }
+
+    /*
+    按目标类或显式投影限定scan取回的列,调用方已经指定了列的scan不再处理
+     */
+    private <T> Scan project(Scan scan, Class<T> c, Projection projection) {
+        if (scan.hasFamilies()) {
+            return scan;
+        }
+        return (projection == null ? Projection.DEFAULT : projection).apply(scan, mapperRegistry.get(c).getColumnNames());
+    }
 }
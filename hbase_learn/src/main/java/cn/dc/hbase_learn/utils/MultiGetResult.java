@@ -0,0 +1,51 @@
+package cn.dc.hbase_learn.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量get的结果
+ * found按请求的rowkey顺序排列,不存在的rowkey放在missing中,不会以null出现在found里
+ */
+public class MultiGetResult<T> {
+
+    private final Map<String, T> found = new LinkedHashMap<>();
+
+    private final List<String> missing = new ArrayList<>();
+
+    void addFound(String rowkey, T value) {
+        found.put(rowkey, value);
+    }
+
+    void addMissing(String rowkey) {
+        missing.add(rowkey);
+    }
+
+    /**
+     * rowkey -> 数据,按请求顺序
+     */
+    public Map<String, T> getFound() {
+        return Collections.unmodifiableMap(found);
+    }
+
+    /**
+     * 按请求顺序排列的数据
+     */
+    public List<T> getValues() {
+        return new ArrayList<>(found.values());
+    }
+
+    /**
+     * 不存在的rowkey,按请求顺序
+     */
+    public List<String> getMissing() {
+        return Collections.unmodifiableList(missing);
+    }
+
+    public boolean isComplete() {
+        return missing.isEmpty();
+    }
+}
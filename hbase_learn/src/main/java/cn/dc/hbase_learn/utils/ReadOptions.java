@@ -0,0 +1,97 @@
+package cn.dc.hbase_learn.utils;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Scan;
+
+import java.io.IOException;
+
+/**
+ * 多版本和时间范围读取的参数,不可变
+ * <p>
+ * 时间范围是[minTimestamp, maxTimestamp),在范围内每列最多返回maxVersions个版本,新的在前。
+ * 能取回几个版本还受列族VERSIONS和TTL限制,超出的版本在compaction后就不存在了。
+ */
+public final class ReadOptions {
+
+    /*只读每列最新的一个版本,和原来的读取方式相同*/
+    public static final ReadOptions LATEST = new ReadOptions(0, HConstants.LATEST_TIMESTAMP, 1);
+
+    private final long minTimestamp;
+
+    private final long maxTimestamp;
+
+    private final int maxVersions;
+
+    private ReadOptions(long minTimestamp, long maxTimestamp, int maxVersions) {
+        if (minTimestamp < 0 || maxTimestamp < minTimestamp) {
+            throw new IllegalArgumentException("invalid time range [" + minTimestamp + ", " + maxTimestamp + ")");
+        }
+        if (maxVersions < 1) {
+            throw new IllegalArgumentException("maxVersions must be positive: " + maxVersions);
+        }
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        this.maxVersions = maxVersions;
+    }
+
+    /**
+     * 列族保留的所有版本
+     */
+    public static ReadOptions allVersions() {
+        return LATEST.maxVersions(Integer.MAX_VALUE);
+    }
+
+    /**
+     * timestamp时刻的快照:每列取不晚于timestamp的最新版本
+     */
+    public static ReadOptions asOf(long timestamp) {
+        //Long.MAX_VALUE(LATEST_TIMESTAMP)+1会溢出成负数
+        return LATEST.timeRange(0, timestamp == Long.MAX_VALUE ? Long.MAX_VALUE : timestamp + 1);
+    }
+
+    public ReadOptions maxVersions(int maxVersions) {
+        return new ReadOptions(minTimestamp, maxTimestamp, maxVersions);
+    }
+
+    /**
+     * @param minTimestamp 包含
+     * @param maxTimestamp 不包含
+     */
+    public ReadOptions timeRange(long minTimestamp, long maxTimestamp) {
+        return new ReadOptions(minTimestamp, maxTimestamp, maxVersions);
+    }
+
+    public long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    public int getMaxVersions() {
+        return maxVersions;
+    }
+
+    public boolean isLatest() {
+        return maxVersions == 1 && minTimestamp == 0 && maxTimestamp == HConstants.LATEST_TIMESTAMP;
+    }
+
+    public Get apply(Get get) throws IOException {
+        get.setTimeRange(minTimestamp, maxTimestamp);
+        get.setMaxVersions(maxVersions);
+        return get;
+    }
+
+    public Scan apply(Scan scan) throws IOException {
+        scan.setTimeRange(minTimestamp, maxTimestamp);
+        scan.setMaxVersions(maxVersions);
+        return scan;
+    }
+
+    @Override
+    public String toString() {
+        return "ReadOptions[" + minTimestamp + ", " + maxTimestamp + "), maxVersions=" + maxVersions;
+    }
+}
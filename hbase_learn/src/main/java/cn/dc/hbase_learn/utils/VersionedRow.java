@@ -0,0 +1,121 @@
+package cn.dc.hbase_learn.utils;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一行数据的多个版本,按列(family:qualifier)分组,每列的版本新的在前
+ */
+public class VersionedRow {
+
+    private final String rowkey;
+
+    private final Map<String, List<Version>> columns;
+
+    private VersionedRow(String rowkey, Map<String, List<Version>> columns) {
+        this.rowkey = rowkey;
+        this.columns = columns;
+    }
+
+    /**
+     * @param rowkey 逻辑rowkey,加盐表已去掉前缀
+     * @return 结果为空时返回null
+     */
+    public static VersionedRow of(String rowkey, Result result) {
+        if (result == null || result.isEmpty()) {
+            return null;
+        }
+        Map<String, List<Version>> columns = new LinkedHashMap<>();
+        //同一列的cell相邻且按时间戳倒序,列名只在换列时解码
+        Cell previous = null;
+        List<Version> versions = null;
+        for (Cell cell : result.rawCells()) {
+            if (previous == null || !CellUtil.matchingColumn(previous, cell)) {
+                versions = new ArrayList<>();
+                columns.put(Bytes.toString(CellUtil.cloneFamily(cell)) + ":" + Bytes.toString(CellUtil.cloneQualifier(cell)), versions);
+            }
+            versions.add(new Version(cell.getTimestamp(), CellUtil.cloneValue(cell)));
+            previous = cell;
+        }
+        return new VersionedRow(rowkey, columns);
+    }
+
+    public String getRowkey() {
+        return rowkey;
+    }
+
+    /**
+     * family:qualifier -> 版本列表
+     */
+    public Map<String, List<Version>> getColumns() {
+        return Collections.unmodifiableMap(columns);
+    }
+
+    /**
+     * 一列的所有版本,新的在前,没有该列返回空列表
+     */
+    public List<Version> getVersions(String family, String qualifier) {
+        List<Version> versions = columns.get(family + ":" + qualifier);
+        return versions == null ? Collections.emptyList() : Collections.unmodifiableList(versions);
+    }
+
+    public Version getLatest(String family, String qualifier) {
+        List<Version> versions = columns.get(family + ":" + qualifier);
+        return versions == null ? null : versions.get(0);
+    }
+
+    /**
+     * timestamp时刻该列的值,即不晚于timestamp的最新版本,没有返回null
+     */
+    public Version getAsOf(String family, String qualifier, long timestamp) {
+        List<Version> versions = columns.get(family + ":" + qualifier);
+        if (versions == null) return null;
+        for (Version version : versions) {
+            if (version.timestamp <= timestamp) return version;
+        }
+        return null;
+    }
+
+    /**
+     * 一个版本:时间戳和原始值
+     */
+    public static final class Version {
+
+        private final long timestamp;
+
+        private final byte[] value;
+
+        Version(long timestamp, byte[] value) {
+            this.timestamp = timestamp;
+            this.value = value;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public byte[] getValue() {
+            return value;
+        }
+
+        /**
+         * 按文本读取值,和getColumn相同
+         */
+        public String getString() {
+            return Bytes.toString(value);
+        }
+
+        @Override
+        public String toString() {
+            return timestamp + "=" + Bytes.toStringBinary(value);
+        }
+    }
+}
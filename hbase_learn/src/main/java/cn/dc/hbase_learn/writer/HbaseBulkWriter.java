@@ -0,0 +1,280 @@
+package cn.dc.hbase_learn.writer;
+
+import cn.dc.hbase_learn.cache.RowCache;
+import cn.dc.hbase_learn.index.SecondaryIndexManager;
+import cn.dc.hbase_learn.mapper.PojoMapperRegistry;
+import cn.dc.hbase_learn.pool.HbaseConnectionPool;
+import cn.dc.hbase_learn.rowkey.RowKeyStrategyRegistry;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.BufferedMutatorParams;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.hadoop.hbase.HbaseSystemException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于BufferedMutator的长生命周期异步写入器
+ * <p>
+ * 每张表一个BufferedMutator,写入先进客户端缓冲区,缓冲区满(writeBufferSize)或到达刷新间隔时
+ * 按region server分组批量发送,调用线程不等待RPC。重试耗尽的失败通过WriteFailureListener回调。
+ * <p>
+ * 二级索引项在数据之前放进索引表的缓冲区,但两张表的缓冲区各自刷出,
+ * 刷出之前按索引可能查不到刚写入的数据,最长一个刷新间隔;刷出失败的索引项由reconcile补建。
+ * <p>
+ * 行缓存在写入时和刷出后各失效一次:数据还在缓冲区时读到的旧行会被缓存,刷出后再失效一次才能看到新值。
+ * 缓冲区满时BufferedMutator自己刷出,不经过这里,所以开启行缓存时必须有定时刷新,
+ * 待失效的rowkey最多保留一个刷新间隔。
+ */
+public class HbaseBulkWriter implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(HbaseBulkWriter.class);
+
+    private final HbaseConnectionPool connectionPool;
+
+    private final PojoMapperRegistry mapperRegistry;
+
+    private final RowCache rowCache;
+
+    private final SecondaryIndexManager indexManager;
+
+    private final RowKeyStrategyRegistry rowKeys;
+
+    private final long writeBufferSize;
+
+    private final WriteFailureListener failureListener;
+
+    private final ConcurrentMap<String, BufferedMutator> mutators = new ConcurrentHashMap<>();
+
+    /*还在缓冲区里的rowkey,刷出后再失效一次行缓存*/
+    private final ConcurrentMap<String, Queue<String>> pendingRows = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService flusher;
+
+    /*吞吐计数*/
+    private final LongAdder mutationCount = new LongAdder();
+    private final LongAdder mutationBytes = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+
+    public HbaseBulkWriter(HbaseConnectionPool connectionPool, PojoMapperRegistry mapperRegistry, RowCache rowCache,
+                           SecondaryIndexManager indexManager, RowKeyStrategyRegistry rowKeys,
+                           long writeBufferSize, long flushIntervalMillis, WriteFailureListener failureListener) {
+        if (rowCache.isEnabled() && flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("hbase.writer.flush-interval-ms must be positive when hbase.cache is enabled, got "
+                    + flushIntervalMillis);
+        }
+        this.connectionPool = connectionPool;
+        this.mapperRegistry = mapperRegistry;
+        this.rowCache = rowCache;
+        this.indexManager = indexManager;
+        this.rowKeys = rowKeys;
+        this.writeBufferSize = writeBufferSize;
+        this.failureListener = failureListener != null ? failureListener
+                : (tableName, row, cause) -> log.error("write to {} failed, row={}", tableName, Bytes.toStringBinary(row.getRow()), cause);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hbase-bulk-writer-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (flushIntervalMillis > 0) {
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 异步写入一个pojo,规则与createPro相同,rowkey按表的rowkey策略转换
+     */
+    public void write(String tableName, String column, String rowkey, Object pojo) {
+        Put put = mapperRegistry.get(pojo.getClass()).toPut(pojo, Bytes.toBytes(column),
+                Bytes.toBytes(rowKeys.forTable(tableName).encode(rowkey)));
+        if (put.isEmpty()) return;
+        mutate(tableName, put);
+    }
+
+    /**
+     * 异步写入任意mutation,mutation里的rowkey是物理rowkey,不做转换
+     */
+    public void mutate(String tableName, Mutation mutation) {
+        try {
+            if (mutation instanceof Put) {
+                mutateIndex(tableName, Collections.singletonList((Put) mutation));
+            }
+            mutator(tableName).mutate(mutation);
+        } catch (IOException e) {
+            throw new HbaseSystemException(e);
+        }
+        rowCache.invalidate(tableName, mutation);
+        pending(tableName, mutation);
+        mutationCount.increment();
+        mutationBytes.add(mutation.heapSize());
+    }
+
+    public void mutate(String tableName, List<? extends Mutation> mutations) {
+        try {
+            List<Put> puts = new ArrayList<>(mutations.size());
+            for (Mutation mutation : mutations) {
+                if (mutation instanceof Put) puts.add((Put) mutation);
+            }
+            mutateIndex(tableName, puts);
+            mutator(tableName).mutate(mutations);
+        } catch (IOException e) {
+            throw new HbaseSystemException(e);
+        }
+        mutationCount.add(mutations.size());
+        for (Mutation mutation : mutations) {
+            rowCache.invalidate(tableName, mutation);
+            pending(tableName, mutation);
+            mutationBytes.add(mutation.heapSize());
+        }
+    }
+
+    private void pending(String tableName, Mutation mutation) {
+        if (!rowCache.isEnabled()) return;
+        pendingRows.computeIfAbsent(tableName, t -> new ConcurrentLinkedQueue<>()).add(Bytes.toString(mutation.getRow()));
+    }
+
+    /*
+    失效已经刷出的rowkey;只取刷出前入队的,之后入队的可能还在缓冲区,留到下次
+     */
+    private void invalidateFlushed(String tableName, int count) {
+        Queue<String> rows = pendingRows.get(tableName);
+        if (rows == null) return;
+        for (int i = 0; i < count; i++) {
+            String row = rows.poll();
+            if (row == null) break;
+            rowCache.invalidate(tableName, row);
+        }
+    }
+
+    private int pendingCount(String tableName) {
+        Queue<String> rows = pendingRows.get(tableName);
+        return rows == null ? 0 : rows.size();
+    }
+
+    /*先于数据写入索引项*/
+    private void mutateIndex(String tableName, List<Put> puts) throws IOException {
+        for (Map.Entry<TableName, List<Put>> entry : indexManager.indexPuts(tableName, puts).entrySet()) {
+            mutator(entry.getKey().getNameAsString()).mutate(entry.getValue());
+        }
+    }
+
+    /**
+     * 同步刷出所有表的缓冲区
+     */
+    public void flush() throws IOException {
+        for (Map.Entry<String, BufferedMutator> entry : mutators.entrySet()) {
+            int count = pendingCount(entry.getKey());
+            entry.getValue().flush();
+            invalidateFlushed(entry.getKey(), count);
+        }
+        flushCount.increment();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            //失败的mutation已经交给failureListener
+            log.warn("periodic flush failed", e);
+        } catch (RuntimeException e) {
+            //异常逃出会让定时任务停止,之后不再定时刷新
+            log.error("periodic flush failed", e);
+        }
+    }
+
+    private BufferedMutator mutator(String tableName) throws IOException {
+        BufferedMutator mutator = mutators.get(tableName);
+        if (mutator != null) return mutator;
+        synchronized (mutators) {
+            mutator = mutators.get(tableName);
+            if (mutator == null) {
+                BufferedMutatorParams params = new BufferedMutatorParams(TableName.valueOf(tableName))
+                        .writeBufferSize(writeBufferSize)
+                        .listener(new BufferedMutator.ExceptionListener() {
+                            @Override
+                            public void onException(RetriesExhaustedWithDetailsException e, BufferedMutator mutator) {
+                                for (int i = 0; i < e.getNumExceptions(); i++) {
+                                    failureCount.increment();
+                                    failureListener.onFailure(tableName, e.getRow(i), e.getCause(i));
+                                }
+                            }
+                        });
+                mutator = connectionPool.borrow().getBufferedMutator(params);
+                mutators.put(tableName, mutator);
+            }
+            return mutator;
+        }
+    }
+
+    /**
+     * 已提交的mutation数
+     */
+    public long getMutationCount() {
+        return mutationCount.sum();
+    }
+
+    /**
+     * 已提交的mutation字节数(heapSize)
+     */
+    public long getMutationBytes() {
+        return mutationBytes.sum();
+    }
+
+    /**
+     * 重试耗尽仍失败的mutation数
+     */
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    /**
+     * 停止定时刷新,刷出剩余数据后关闭所有BufferedMutator
+     */
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        //等正在执行的定时刷新结束,避免和下面的close并发
+        try {
+            if (!flusher.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("periodic flush still running, closing mutators anyway");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        IOException failure = null;
+        for (Map.Entry<String, BufferedMutator> entry : mutators.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (IOException e) {
+                failure = e;
+            }
+            invalidateFlushed(entry.getKey(), Integer.MAX_VALUE);
+        }
+        mutators.clear();
+        pendingRows.clear();
+        if (failure != null) throw failure;
+    }
+}
@@ -0,0 +1,17 @@
+package cn.dc.hbase_learn.writer;
+
+import org.apache.hadoop.hbase.client.Row;
+
+/**
+ * 异步写入重试耗尽后的失败回调,在BufferedMutator的flush线程中执行,不要做重操作
+ */
+@FunctionalInterface
+public interface WriteFailureListener {
+
+    /**
+     * @param tableName 表名
+     * @param row       写入失败的mutation
+     * @param cause     失败原因
+     */
+    void onFailure(String tableName, Row row, Throwable cause);
+}
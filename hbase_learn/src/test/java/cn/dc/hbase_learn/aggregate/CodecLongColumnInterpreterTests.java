@@ -0,0 +1,40 @@
+package cn.dc.hbase_learn.aggregate;
+
+import cn.dc.hbase_learn.codec.BinaryValueCodec;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CodecLongColumnInterpreterTests {
+
+    static final byte[] FAMILY = Bytes.toBytes("info");
+    static final byte[] AGE = Bytes.toBytes("age");
+
+    CodecLongColumnInterpreter interpreter = new CodecLongColumnInterpreter();
+
+    private static KeyValue cell(byte[] qualifier, byte[] value) {
+        return new KeyValue(Bytes.toBytes("r1"), FAMILY, qualifier, value);
+    }
+
+    @Test
+    void readsTextAndBinaryValues() {
+        assertEquals(Long.valueOf(42), interpreter.getValue(FAMILY, AGE, cell(AGE, Bytes.toBytes("42"))));
+        byte[] binary = new BinaryValueCodec(true).encoder(Long.class).encode(-7L);
+        assertEquals(Long.valueOf(-7), interpreter.getValue(FAMILY, AGE, cell(AGE, binary)));
+        for (long v : new long[]{0, 300, Long.MIN_VALUE, Long.MAX_VALUE}) {
+            assertEquals(Long.valueOf(v), interpreter.getValue(FAMILY, AGE, cell(AGE, new BinaryValueCodec(true).encode(v))));
+        }
+    }
+
+    @Test
+    void skipsOtherColumnsAndNonNumbers() {
+        assertNull(interpreter.getValue(FAMILY, AGE, cell(Bytes.toBytes("name"), Bytes.toBytes("42"))));
+        assertNull(interpreter.getValue(FAMILY, AGE, cell(AGE, Bytes.toBytes("abc"))));
+        assertNull(interpreter.getValue(FAMILY, AGE, null));
+        //没有结束字节的varint
+        assertNull(interpreter.getValue(FAMILY, AGE, cell(AGE, new byte[]{0x01, (byte) 0x80})));
+    }
+}
@@ -0,0 +1,62 @@
+package cn.dc.hbase_learn.codec;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryValueCodecTests {
+
+    BinaryValueCodec codec = new BinaryValueCodec(true);
+
+    private Object roundTrip(Class<?> type, Object value) {
+        byte[] bytes = codec.encoder(type).encode(value);
+        return codec.decoder(type).decode(bytes, 0, bytes.length);
+    }
+
+    @Test
+    void roundTripTypedValues() {
+        assertEquals(0L, roundTrip(long.class, 0L));
+        assertEquals(Long.MIN_VALUE, roundTrip(Long.class, Long.MIN_VALUE));
+        assertEquals(-123456, roundTrip(int.class, -123456));
+        assertEquals((short) 7, roundTrip(Short.class, (short) 7));
+        assertEquals(3.25d, roundTrip(double.class, 3.25d));
+        assertEquals(1.5f, roundTrip(Float.class, 1.5f));
+        assertEquals(true, roundTrip(boolean.class, true));
+        assertEquals(new Date(1571385600000L), roundTrip(Date.class, new Date(1571385600000L)));
+        assertEquals("值", roundTrip(String.class, "值"));
+        assertEquals("\u0001abc", roundTrip(String.class, "\u0001abc"));
+    }
+
+    @Test
+    void smallNumbersAreCompact() {
+        assertEquals(2, codec.encoder(int.class).encode(42).length);
+        assertEquals(2, codec.encoder(long.class).encode(-1L).length);
+    }
+
+    @Test
+    void stringsStayPlainUtf8() {
+        assertArrayEquals(Bytes.toBytes("target"), codec.encoder(String.class).encode("target"));
+        assertNull(codec.encoder(String.class).encode(" "));
+    }
+
+    @Test
+    void readsLegacyTextInCompatibleMode() {
+        byte[] text = Bytes.toBytes("-42");
+        assertEquals(-42, codec.decoder(Integer.class).decode(text, 0, text.length));
+        byte[] flag = Bytes.toBytes("true");
+        assertEquals(true, codec.decoder(boolean.class).decode(flag, 0, flag.length));
+    }
+
+    @Test
+    void rejectsLegacyTextInStrictMode() {
+        BinaryValueCodec strict = new BinaryValueCodec(false);
+        byte[] text = Bytes.toBytes("42");
+        assertThrows(IllegalArgumentException.class, () -> strict.decoder(long.class).decode(text, 0, text.length));
+    }
+}
@@ -0,0 +1,36 @@
+package cn.dc.hbase_learn.index;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexDefinitionTests {
+
+    @Test
+    void indexRowkeyFallsInValueRange() {
+        byte[] value = Bytes.toBytes("set1");
+        byte[] key = IndexDefinition.indexRowkey(value, Bytes.toBytes("row9"));
+        assertTrue(Bytes.compareTo(IndexDefinition.startRow(value), key) <= 0);
+        assertTrue(Bytes.compareTo(key, IndexDefinition.stopRow(value)) < 0);
+        assertTrue(Bytes.compareTo(IndexDefinition.indexRowkey(Bytes.toBytes("set10"), Bytes.toBytes("a")),
+                IndexDefinition.stopRow(value)) >= 0);
+    }
+
+    @Test
+    void valueIsRecoveredFromRowkey() {
+        byte[] rowkey = Bytes.toBytes("row9");
+        byte[] key = IndexDefinition.indexRowkey(Bytes.toBytes("set1"), rowkey);
+        assertArrayEquals(Bytes.toBytes("set1"), IndexDefinition.valueOf(key, rowkey));
+    }
+
+    @Test
+    void indexTableIsNamedAfterColumn() {
+        IndexDefinition definition = new IndexDefinition("target", "info", "targetSet");
+        assertEquals("target_idx_info_targetSet", definition.getIndexTableName().getNameAsString());
+        assertNotEquals(definition.getIndexTableName(), new IndexDefinition("target", "ext", "targetSet").getIndexTableName());
+    }
+}
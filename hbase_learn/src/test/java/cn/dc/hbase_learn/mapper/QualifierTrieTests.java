@@ -0,0 +1,28 @@
+package cn.dc.hbase_learn.mapper;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class QualifierTrieTests {
+
+    @Test
+    void matchesQualifierInsideLargerArray() {
+        Map<String, Integer> names = new HashMap<>();
+        names.put("target", 1);
+        names.put("targetSet", 2);
+        names.put("targetSonSet", 3);
+        QualifierTrie<Integer> trie = new QualifierTrie<>(names);
+        byte[] buffer = Bytes.toBytes("xxtargetSetyy");
+        assertEquals(2, trie.get(buffer, 2, 9));
+        assertEquals(1, trie.get(buffer, 2, 6));
+        assertNull(trie.get(buffer, 2, 7));
+        assertNull(trie.get(buffer, 0, 0));
+        assertNull(trie.get(Bytes.toBytes("targetSetX"), 0, 10));
+    }
+}
@@ -0,0 +1,56 @@
+package cn.dc.hbase_learn.rowkey;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowKeyStrategiesTests {
+
+    @Test
+    void saltedKeysRoundTrip() {
+        RowKeyStrategy strategy = RowKeyStrategies.parse("salt:16");
+        String encoded = strategy.encode("20191018001");
+        assertTrue(encoded.matches("\\d\\d\\|20191018001"));
+        assertEquals("20191018001", strategy.decode(encoded));
+        assertEquals(encoded, strategy.encode("20191018001"));
+    }
+
+    @Test
+    void hashPrefixKeysRoundTrip() {
+        RowKeyStrategy strategy = RowKeyStrategies.parse("hash:2");
+        assertEquals(256, strategy.prefixes().size());
+        String encoded = strategy.encode("user1");
+        assertTrue(strategy.prefixes().contains(encoded.substring(0, 3)));
+        assertEquals("user1", strategy.decode(encoded));
+    }
+
+    @Test
+    void rangeScanFansOutToEveryBucket() throws Exception {
+        RowKeyStrategy strategy = RowKeyStrategies.salted(4);
+        List<Scan> scans = strategy.fanOut(new Scan(Bytes.toBytes("a"), Bytes.toBytes("b")));
+        assertEquals(4, scans.size());
+        assertEquals("2|a", Bytes.toString(scans.get(2).getStartRow()));
+        assertEquals("2|b", Bytes.toString(scans.get(2).getStopRow()));
+        List<Scan> full = strategy.fanOut(new Scan());
+        assertEquals("3|", Bytes.toString(full.get(3).getStartRow()));
+        assertEquals("3}", Bytes.toString(full.get(3).getStopRow()));
+    }
+
+    @Test
+    void logicalOrderIgnoresPrefix() {
+        RowKeyStrategy strategy = RowKeyStrategies.salted(4);
+        assertTrue(strategy.logicalOrder().compare(Bytes.toBytes("3|a"), Bytes.toBytes("0|b")) < 0);
+    }
+
+    @Test
+    void identityIsDefault() {
+        assertSame(RowKeyStrategies.identity(), new RowKeyStrategyRegistry(Collections.emptyMap()).forTable("t"));
+    }
+}
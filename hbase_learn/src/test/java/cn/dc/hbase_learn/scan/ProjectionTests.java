@@ -0,0 +1,28 @@
+package cn.dc.hbase_learn.scan;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class ProjectionTests {
+
+    private static Filter.ReturnCode filter(Filter filter, String qualifier) throws IOException {
+        return filter.filterKeyValue(new KeyValue(Bytes.toBytes("r1"), Bytes.toBytes("info"), Bytes.toBytes(qualifier), Bytes.toBytes("v")));
+    }
+
+    @Test
+    void columnsWithoutFamilyMatchExactly() throws IOException {
+        Filter filter = Projection.DEFAULT.apply(new Scan(), Collections.singletonList("id")).getFilter();
+        assertEquals(Filter.ReturnCode.INCLUDE, filter(filter, "id"));
+        assertNotEquals(Filter.ReturnCode.INCLUDE, filter(filter, "idCard"));
+        assertNotEquals(Filter.ReturnCode.INCLUDE, filter(filter, "name"));
+    }
+}
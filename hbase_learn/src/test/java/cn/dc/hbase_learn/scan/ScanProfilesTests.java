@@ -0,0 +1,78 @@
+package cn.dc.hbase_learn.scan;
+
+import cn.dc.hbase_learn.config.HbaseScanProperties;
+import org.apache.hadoop.hbase.client.Consistency;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.CompareFilter;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScanProfilesTests {
+
+    private static ScanProfile profile(int caching) {
+        ScanProfile profile = new ScanProfile();
+        profile.setCaching(caching);
+        return profile;
+    }
+
+    private static ScanProfiles profiles() {
+        HbaseScanProperties properties = new HbaseScanProperties();
+        properties.getProfiles().put("range-scan", profile(2000));
+        properties.getProfiles().put("analytic-full-scan", profile(5000));
+        ScanProfile replica = profile(10);
+        replica.setConsistency(Consistency.TIMELINE);
+        replica.setSmall(true);
+        properties.getProfiles().put("oltp-point", replica);
+        return new ScanProfiles(properties);
+    }
+
+    @Test
+    void defaultDependsOnBounds() {
+        assertEquals(5000, profiles().apply(new Scan(), null).getCaching());
+        Scan bounded = new Scan(Bytes.toBytes("a"), Bytes.toBytes("b"));
+        assertEquals(2000, profiles().apply(bounded, null).getCaching());
+    }
+
+    @Test
+    void namedProfile() {
+        Scan scan = profiles().apply(new Scan(), "oltp-point");
+        assertEquals(10, scan.getCaching());
+        assertEquals(Consistency.TIMELINE, scan.getConsistency());
+        assertTrue(scan.isSmall());
+        assertThrows(IllegalArgumentException.class, () -> profiles().apply(new Scan(), "missing"));
+    }
+
+    @Test
+    void fallbackWhenDefaultsNotConfigured() {
+        Scan scan = new ScanProfiles(new HbaseScanProperties()).apply(new Scan(), null);
+        assertEquals(2000, scan.getCaching());
+        assertFalse(scan.getCacheBlocks());
+    }
+
+    @Test
+    void batchSkippedForRowFilters() {
+        ScanProfile wide = profile(20);
+        wide.setBatch(100);
+        Scan scan = new Scan();
+        scan.setFilter(new SingleColumnValueFilter(Bytes.toBytes("f"), Bytes.toBytes("q"), CompareFilter.CompareOp.EQUAL, Bytes.toBytes("v")));
+        assertEquals(-1, wide.apply(scan).getBatch());
+        assertEquals(100, wide.apply(new Scan()).getBatch());
+    }
+
+    @Test
+    void batchIgnoredForWholeRows() {
+        HbaseScanProperties properties = new HbaseScanProperties();
+        ScanProfile wide = profile(20);
+        wide.setBatch(100);
+        properties.getProfiles().put("wide-row", wide);
+        Scan scan = new ScanProfiles(properties).applyWholeRows(new Scan(), "wide-row");
+        assertEquals(20, scan.getCaching());
+        assertEquals(-1, scan.getBatch());
+    }
+}
@@ -0,0 +1,39 @@
+package cn.dc.hbase_learn.schema;
+
+import cn.dc.hbase_learn.rowkey.RowKeyStrategies;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TableSpecTests {
+
+    @Test
+    void hexSplitDividesKeySpaceEvenly() {
+        byte[][] keys = TableSpec.of("t").hexSplit(4).getSplitKeys();
+        assertEquals(3, keys.length);
+        assertEquals("40000000", Bytes.toString(keys[0]));
+        assertEquals("80000000", Bytes.toString(keys[1]));
+        assertEquals("c0000000", Bytes.toString(keys[2]));
+    }
+
+    @Test
+    void saltedTableGetsOneRegionPerBucket() {
+        byte[][] keys = TableSpec.of("t").splitByPrefixes(RowKeyStrategies.salted(16)).getSplitKeys();
+        assertEquals(15, keys.length);
+        assertEquals("01|", Bytes.toString(keys[0]));
+    }
+
+    @Test
+    void familySpecOnlyOverridesConfiguredSettings() {
+        HColumnDescriptor existing = new HColumnDescriptor("info");
+        existing.setTimeToLive(3600);
+        FamilySpec.of("info").compression(Compression.Algorithm.GZ).bloomType(BloomType.ROWCOL).applyTo(existing);
+        assertEquals(Compression.Algorithm.GZ, existing.getCompressionType());
+        assertEquals(BloomType.ROWCOL, existing.getBloomFilterType());
+        assertEquals(3600, existing.getTimeToLive());
+    }
+}
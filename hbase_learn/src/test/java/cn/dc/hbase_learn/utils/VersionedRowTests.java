@@ -0,0 +1,52 @@
+package cn.dc.hbase_learn.utils;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VersionedRowTests {
+
+    private static Cell cell(String qualifier, long timestamp, String value) {
+        return new KeyValue(Bytes.toBytes("r1"), Bytes.toBytes("info"), Bytes.toBytes(qualifier), timestamp, Bytes.toBytes(value));
+    }
+
+    @Test
+    void groupsVersionsPerColumn() {
+        List<Cell> cells = Arrays.asList(cell("age", 300, "3"), cell("age", 200, "2"), cell("age", 100, "1"), cell("name", 150, "tom"));
+        VersionedRow row = VersionedRow.of("r1", Result.create(cells));
+        assertEquals(2, row.getColumns().size());
+        assertEquals(3, row.getVersions("info", "age").size());
+        assertEquals("3", row.getLatest("info", "age").getString());
+        assertEquals("2", row.getAsOf("info", "age", 250).getString());
+        assertNull(row.getAsOf("info", "age", 99));
+        assertEquals(150, row.getLatest("info", "name").getTimestamp());
+        assertTrue(row.getVersions("info", "missing").isEmpty());
+    }
+
+    @Test
+    void emptyResultIsNull() {
+        assertNull(VersionedRow.of("r1", Result.create(new Cell[0])));
+    }
+
+    @Test
+    void readOptions() {
+        ReadOptions asOf = ReadOptions.asOf(1000);
+        assertEquals(1001, asOf.getMaxTimestamp());
+        assertEquals(1, asOf.getMaxVersions());
+        assertEquals(Long.MAX_VALUE, ReadOptions.asOf(Long.MAX_VALUE).getMaxTimestamp());
+        assertTrue(ReadOptions.LATEST.isLatest());
+        assertEquals(Integer.MAX_VALUE, ReadOptions.allVersions().getMaxVersions());
+        assertThrows(IllegalArgumentException.class, () -> ReadOptions.LATEST.timeRange(10, 5));
+        assertThrows(IllegalArgumentException.class, () -> ReadOptions.LATEST.maxVersions(0));
+    }
+}
@@ -0,0 +1,294 @@
+package cn.dc.kafkaapi.consumer;
+
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * 本地追加写文件的OffsetStore
+ * <p>
+ * 每次commit编码成一帧[长度][crc32][offset和结果]放进内存缓冲,后台线程每flushIntervalMs把缓冲整块写入文件并fsync。
+ * 打开时从头重放,写到一半的尾帧(长度或crc不对)截断丢弃,所以一帧里的offset和结果总是一起生效;
+ * 宕机只丢最后一段没刷盘的commit,offset和结果一起回退,重新处理后结果一致。
+ * 文件超过compactBytes时,把每个分区最新的offset和结果写成快照,原子替换原文件。
+ * <p>
+ * 文件在本机,分区分配到其他机器的消费者时那边读不到,适合固定分配或共享磁盘的场景。
+ */
+public class FileOffsetStore implements OffsetStore {
+
+    private static final Logger log = LoggerFactory.getLogger(FileOffsetStore.class);
+
+    private final Path path;
+
+    private final long compactBytes;
+
+    private final ScheduledExecutorService flusher;
+
+    /*已commit的最新状态,包括还没刷盘的;和pending一起由this加锁*/
+    private final Map<TopicPartition, Long> offsets = new HashMap<>();
+
+    private final Map<TopicPartition, byte[]> results = new HashMap<>();
+
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    /*写文件的锁,后台刷盘和同步flush互斥*/
+    private final Object writeLock = new Object();
+
+    private FileChannel channel;
+
+    private volatile IOException failure;
+
+    /*由this加锁*/
+    private boolean closed;
+
+    public FileOffsetStore(Path path) throws IOException {
+        this(path, 100, 64L << 20);
+    }
+
+    public FileOffsetStore(Path path, long flushIntervalMs, long compactBytes) throws IOException {
+        this.path = path;
+        this.compactBytes = compactBytes;
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(path, CREATE, READ, WRITE);
+        try {
+            replay();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "offset-store-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized long offset(TopicPartition partition) {
+        Long offset = offsets.get(partition);
+        return offset == null ? -1 : offset;
+    }
+
+    @Override
+    public synchronized byte[] result(TopicPartition partition) {
+        return results.get(partition);
+    }
+
+    /**
+     * 只写入内存缓冲,由后台线程批量刷盘;之前刷盘失败过时抛出那次的异常
+     */
+    @Override
+    public void commit(Map<TopicPartition, Long> offsets, Map<TopicPartition, byte[]> results) throws IOException {
+        if (failure != null) {
+            throw new IOException("offset store " + path + " failed", failure);
+        }
+        if (results == null) {
+            results = Collections.emptyMap();
+        }
+        if (offsets.isEmpty() && results.isEmpty()) {
+            return;
+        }
+        //编码放在锁外
+        byte[] frame = frame(offsets, results);
+        synchronized (this) {
+            //和close在同一把锁下检查,关闭之后不会再有commit写进缓冲
+            if (closed) {
+                throw new IllegalStateException("offset store is closed");
+            }
+            pending.write(frame, 0, frame.length);
+            this.offsets.putAll(offsets);
+            this.results.putAll(results);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            if (failure != null) {
+                throw new IOException("offset store " + path + " failed", failure);
+            }
+            byte[] data;
+            byte[] snapshot = null;
+            synchronized (this) {
+                if (pending.size() == 0) {
+                    return;
+                }
+                data = pending.toByteArray();
+                pending.reset();
+                if (channel.position() + data.length > compactBytes) {
+                    //快照已经包含缓冲里的所有commit
+                    snapshot = frame(offsets, results);
+                }
+            }
+            try {
+                if (snapshot != null) {
+                    compact(snapshot);
+                } else {
+                    write(channel, data);
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                //缓冲已经取出,状态和文件不一致,之后不再接受commit
+                failure = e;
+                throw e;
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            log.error("flush offsets to {} failed", path, e);
+        }
+    }
+
+    /*
+    快照先写到临时文件并fsync,再改名覆盖原文件
+     */
+    private void compact(byte[] snapshot) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(tmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            write(out, snapshot);
+            out.force(true);
+        }
+        Files.move(tmp, path, ATOMIC_MOVE, REPLACE_EXISTING);
+        channel.close();
+        channel = FileChannel.open(path, READ, WRITE);
+        channel.position(channel.size());
+    }
+
+    /*
+    重放所有完整的帧,截掉末尾不完整的部分
+     */
+    private void replay() throws IOException {
+        long size = channel.size();
+        long valid = 0;
+        //不关闭,关闭会同时关闭channel
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        while (valid + 8 <= size) {
+            int length = in.readInt();
+            int crc = in.readInt();
+            if (length < 0 || valid + 8 + length > size) {
+                break;
+            }
+            byte[] body = new byte[length];
+            in.readFully(body);
+            if (crc(body) != crc) {
+                break;
+            }
+            apply(body);
+            valid += 8 + length;
+        }
+        if (valid < size) {
+            log.warn("truncate {} incomplete bytes at the end of {}", size - valid, path);
+            channel.truncate(valid);
+        }
+        channel.position(valid);
+    }
+
+    private void apply(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        for (int i = in.readInt(); i > 0; i--) {
+            offsets.put(new TopicPartition(in.readUTF(), in.readInt()), in.readLong());
+        }
+        for (int i = in.readInt(); i > 0; i--) {
+            TopicPartition partition = new TopicPartition(in.readUTF(), in.readInt());
+            byte[] result = new byte[in.readInt()];
+            in.readFully(result);
+            results.put(partition, result);
+        }
+    }
+
+    private static byte[] frame(Map<TopicPartition, Long> offsets, Map<TopicPartition, byte[]> results) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            //长度和crc的位置,最后回填
+            out.writeLong(0);
+            out.writeInt(offsets.size());
+            for (Map.Entry<TopicPartition, Long> entry : offsets.entrySet()) {
+                out.writeUTF(entry.getKey().topic());
+                out.writeInt(entry.getKey().partition());
+                out.writeLong(entry.getValue());
+            }
+            out.writeInt(results.size());
+            for (Map.Entry<TopicPartition, byte[]> entry : results.entrySet()) {
+                out.writeUTF(entry.getKey().topic());
+                out.writeInt(entry.getKey().partition());
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+        } catch (IOException e) {
+            //ByteArrayOutputStream不会抛
+            throw new IllegalStateException(e);
+        }
+        byte[] frame = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(frame, 8, frame.length - 8);
+        ByteBuffer.wrap(frame).putInt(frame.length - 8).putInt((int) crc.getValue());
+        return frame;
+    }
+
+    private static int crc(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        return (int) crc.getValue();
+    }
+
+    private static void write(FileChannel channel, byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * 刷出缓冲里剩余的commit后关闭
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        flusher.shutdown();
+        try {
+            flush();
+        } finally {
+            synchronized (writeLock) {
+                channel.close();
+            }
+        }
+    }
+}
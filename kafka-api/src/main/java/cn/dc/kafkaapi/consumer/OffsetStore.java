@@ -0,0 +1,39 @@
+package cn.dc.kafkaapi.consumer;
+
+import org.apache.kafka.common.TopicPartition;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 消费者自己保存offset的存储,offset和处理结果在一次commit里一起写入
+ * <p>
+ * offset指下一条要消费的位置(已处理记录的offset+1)。
+ * commit只保证同一批的offset和结果要么都可见要么都不可见;何时落盘由实现决定,
+ * flush返回后之前的commit都已持久化。
+ */
+public interface OffsetStore extends Closeable {
+
+    /**
+     * 下一条要消费的offset,没有记录时返回-1
+     */
+    long offset(TopicPartition partition);
+
+    /**
+     * 和当前offset一起保存的处理结果,没有时返回null
+     */
+    byte[] result(TopicPartition partition);
+
+    /**
+     * 保存一批offset和对应的处理结果
+     *
+     * @param results 可以为空,也可以只包含部分分区
+     */
+    void commit(Map<TopicPartition, Long> offsets, Map<TopicPartition, byte[]> results) throws IOException;
+
+    /**
+     * 同步刷盘,返回后之前的commit都已持久化
+     */
+    void flush() throws IOException;
+}
@@ -1,4 +1,418 @@
 package cn.dc.kafkaapi.producer;
 
-public class Producer {
+import org.apache.kafka.clients.producer.BufferExhaustedException;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.AuthorizationException;
+import org.apache.kafka.common.errors.OutOfOrderSequenceException;
+import org.apache.kafka.common.errors.ProducerFencedException;
+import org.apache.kafka.common.serialization.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 可复用、线程安全的异步producer服务,一个进程里共用一个实例
+ * <p>
+ * 三种发送方式:fire发完不管,失败只计数和打日志;send返回CompletableFuture;sendAll批量发送,
+ * 事务模式下整批在一个事务里提交。
+ * 在途记录数用信号量限制,满了最多等待maxBlockMs,超时抛BufferExhaustedException,
+ * 调用方不会无限期阻塞;KafkaProducer自己的max.block.ms也设成同样的值。
+ * 名额在kafka的io线程上释放,返回的future在单独的回调线程上完成,所以在thenApply/thenCompose里继续send不会卡住io线程;
+ * 直接在io线程上(比如KafkaProducer的原生Callback里)调用发送方法会立即抛IllegalStateException。
+ * <p>
+ * 配置了transactionalId时是事务模式(隐含幂等),发送必须在inTransaction或sendAll里进行。
+ */
+public class Producer<K, V> implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(Producer.class);
+
+    /*KafkaProducer的io线程名*/
+    private static final String NETWORK_THREAD_PREFIX = "kafka-producer-network-thread";
+
+    /**
+     * 调优方向
+     */
+    public enum Profile {
+
+        /*大batch、等待凑批,压缩率优先,适合日志、埋点等批量数据*/
+        THROUGHPUT(256 * 1024, 20, "lz4", 5),
+
+        /*小batch、不等待,单条延迟优先*/
+        LATENCY(16 * 1024, 0, "lz4", 5);
+
+        private final int batchSize;
+
+        private final int lingerMs;
+
+        private final String compression;
+
+        private final int maxInFlight;
+
+        Profile(int batchSize, int lingerMs, String compression, int maxInFlight) {
+            this.batchSize = batchSize;
+            this.lingerMs = lingerMs;
+            this.compression = compression;
+            this.maxInFlight = maxInFlight;
+        }
+    }
+
+    private final KafkaProducer<K, V> producer;
+
+    private final Semaphore permits;
+
+    private final int maxPending;
+
+    private final long maxBlockMs;
+
+    private final boolean transactional;
+
+    private final Executor callbackExecutor;
+
+    /*默认的回调线程,由这个实例创建,关闭时一起关闭*/
+    private final ExecutorService ownedExecutor;
+
+    /*同一时间只能有一个事务*/
+    private final ReentrantLock transactionLock = new ReentrantLock();
+
+    private final LongAdder sent = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private volatile boolean closed;
+
+    private Producer(Builder<K, V> builder) {
+        Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, builder.bootstrapServers);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, builder.profile.batchSize);
+        props.put(ProducerConfig.LINGER_MS_CONFIG, builder.profile.lingerMs);
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, builder.compression != null ? builder.compression : builder.profile.compression);
+        props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION_CONFIG, builder.profile.maxInFlight);
+        props.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, builder.maxBlockMs);
+        if (builder.idempotent || builder.transactionalId != null) {
+            //幂等要求acks=all、max.in.flight<=5,重试不会产生重复和乱序
+            props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        }
+        if (builder.transactionalId != null) {
+            props.put(ProducerConfig.TRANSACTIONAL_ID_CONFIG, builder.transactionalId);
+        }
+        //显式配置的项最后放,覆盖profile
+        props.putAll(builder.overrides);
+        this.producer = new KafkaProducer<>(props, builder.keySerializer, builder.valueSerializer);
+        this.maxPending = builder.maxPending;
+        this.permits = new Semaphore(builder.maxPending);
+        this.maxBlockMs = builder.maxBlockMs;
+        this.transactional = builder.transactionalId != null;
+        if (builder.callbackExecutor != null) {
+            this.ownedExecutor = null;
+            this.callbackExecutor = builder.callbackExecutor;
+        } else {
+            //单线程,同一个producer的future按ack顺序完成
+            this.ownedExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "producer-callbacks");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.callbackExecutor = ownedExecutor;
+        }
+        if (transactional) {
+            producer.initTransactions();
+        }
+    }
+
+    public static <K, V> Builder<K, V> builder(String bootstrapServers, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        return new Builder<>(bootstrapServers, keySerializer, valueSerializer);
+    }
+
+    /**
+     * 发完不管,失败只计数和打日志
+     *
+     * @throws BufferExhaustedException 在途记录满了,等待maxBlockMs后仍没有空位
+     */
+    public void fire(String topic, K key, V value) {
+        send(new ProducerRecord<>(topic, key, value), false);
+    }
+
+    public CompletableFuture<RecordMetadata> send(String topic, K key, V value) {
+        return send(new ProducerRecord<>(topic, key, value));
+    }
+
+    /**
+     * 异步发送,ack后future完成
+     *
+     * @throws BufferExhaustedException 在途记录满了,等待maxBlockMs后仍没有空位
+     */
+    public CompletableFuture<RecordMetadata> send(ProducerRecord<K, V> record) {
+        return send(record, true);
+    }
+
+    /**
+     * 批量发送,全部ack后future完成,任一失败则以该异常失败
+     * 事务模式下整批在一个事务里提交,调用线程等待提交完成
+     */
+    public CompletableFuture<List<RecordMetadata>> sendAll(Collection<ProducerRecord<K, V>> records) {
+        if (transactional && !transactionLock.isHeldByCurrentThread()) {
+            try {
+                return CompletableFuture.completedFuture(inTransaction(p -> p.sendAll(records).join()));
+            } catch (RuntimeException e) {
+                CompletableFuture<List<RecordMetadata>> future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+                return future;
+            }
+        }
+        List<CompletableFuture<RecordMetadata>> futures = new ArrayList<>(records.size());
+        for (ProducerRecord<K, V> record : records) {
+            futures.add(send(record, true));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<RecordMetadata> metadata = new ArrayList<>(futures.size());
+            for (CompletableFuture<RecordMetadata> future : futures) {
+                metadata.add(future.join());
+            }
+            return metadata;
+        });
+    }
+
+    /**
+     * 在一个事务里执行body,正常返回时提交,异常时中止
+     * body里的发送在提交前全部flush;producer被fence等不可恢复的错误会关闭producer
+     */
+    public <T> T inTransaction(Function<Producer<K, V>, T> body) {
+        if (!transactional) {
+            throw new IllegalStateException("producer is not transactional");
+        }
+        transactionLock.lock();
+        try {
+            producer.beginTransaction();
+            try {
+                T result = body.apply(this);
+                producer.commitTransaction();
+                return result;
+            } catch (ProducerFencedException | OutOfOrderSequenceException | AuthorizationException e) {
+                //同一个transactionalId的新实例已经启动,或者状态不可恢复,只能关闭
+                close();
+                throw e;
+            } catch (RuntimeException e) {
+                producer.abortTransaction();
+                throw e;
+            }
+        } finally {
+            transactionLock.unlock();
+        }
+    }
+
+    private CompletableFuture<RecordMetadata> send(ProducerRecord<K, V> record, boolean track) {
+        if (closed) {
+            throw new IllegalStateException("producer is closed");
+        }
+        acquire();
+        CompletableFuture<RecordMetadata> future = track ? new CompletableFuture<>() : null;
+        try {
+            producer.send(record, (metadata, exception) -> {
+                permits.release();
+                if (exception == null) {
+                    sent.increment();
+                    if (future != null) complete(future, metadata, null);
+                } else {
+                    failed.increment();
+                    if (future != null) {
+                        complete(future, null, exception);
+                    } else {
+                        log.error("send to {} failed", record.topic(), exception);
+                    }
+                }
+            });
+        } catch (KafkaException | IllegalStateException e) {
+            //没有进入缓冲区,回调不会执行
+            permits.release();
+            failed.increment();
+            throw e;
+        }
+        return future;
+    }
+
+    /*
+    在回调线程上完成future,回调线程被关闭或拒绝时退回当前线程
+     */
+    private void complete(CompletableFuture<RecordMetadata> future, RecordMetadata metadata, Exception exception) {
+        Runnable completion = () -> {
+            if (exception == null) {
+                future.complete(metadata);
+            } else {
+                future.completeExceptionally(exception);
+            }
+        };
+        try {
+            callbackExecutor.execute(completion);
+        } catch (RejectedExecutionException e) {
+            completion.run();
+        }
+    }
+
+    private void acquire() {
+        //io线程等名额只会等到超时:只有io线程自己能释放名额
+        if (Thread.currentThread().getName().startsWith(NETWORK_THREAD_PREFIX)) {
+            throw new IllegalStateException("cannot send from the kafka producer network thread");
+        }
+        try {
+            if (!permits.tryAcquire(maxBlockMs, TimeUnit.MILLISECONDS)) {
+                throw new BufferExhaustedException("more than " + maxPending + " records pending for " + maxBlockMs + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KafkaException("interrupted while waiting for send buffer", e);
+        }
+    }
+
+    /**
+     * 等待缓冲区里的记录全部发出
+     */
+    public void flush() {
+        producer.flush();
+    }
+
+    /**
+     * 成功ack的记录数
+     */
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * 当前在途的记录数
+     */
+    public int getPending() {
+        return maxPending - permits.availablePermits();
+    }
+
+    /**
+     * 发出缓冲区里剩余的记录后关闭
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        producer.close();
+        //producer关闭前所有回调都已经提交,这里等它们执行完
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+            try {
+                ownedExecutor.awaitTermination(maxBlockMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static final class Builder<K, V> {
+
+        private final String bootstrapServers;
+
+        private final Serializer<K> keySerializer;
+
+        private final Serializer<V> valueSerializer;
+
+        private Profile profile = Profile.THROUGHPUT;
+
+        private String compression;
+
+        private boolean idempotent;
+
+        private String transactionalId;
+
+        private int maxPending = 10000;
+
+        private long maxBlockMs = 5000;
+
+        private Executor callbackExecutor;
+
+        private final Properties overrides = new Properties();
+
+        private Builder(String bootstrapServers, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+            this.bootstrapServers = bootstrapServers;
+            this.keySerializer = keySerializer;
+            this.valueSerializer = valueSerializer;
+        }
+
+        public Builder<K, V> profile(Profile profile) {
+            this.profile = profile;
+            return this;
+        }
+
+        /**
+         * 覆盖profile的压缩方式,zstd需要客户端和broker都是2.1以上
+         */
+        public Builder<K, V> compression(String compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * 幂等发送,重试不会写入重复消息
+         */
+        public Builder<K, V> idempotent(boolean idempotent) {
+            this.idempotent = idempotent;
+            return this;
+        }
+
+        /**
+         * 事务模式,每个producer实例的transactionalId要唯一且重启后保持不变
+         */
+        public Builder<K, V> transactionalId(String transactionalId) {
+            this.transactionalId = transactionalId;
+            return this;
+        }
+
+        /**
+         * 在途记录数上限,以及没有空位时的最长等待时间
+         */
+        public Builder<K, V> backpressure(int maxPending, long maxBlockMs) {
+            this.maxPending = maxPending;
+            this.maxBlockMs = maxBlockMs;
+            return this;
+        }
+
+        /**
+         * 完成send返回的future的线程池,默认是这个producer自己的单个回调线程;不能是kafka的io线程
+         */
+        public Builder<K, V> callbackExecutor(Executor callbackExecutor) {
+            this.callbackExecutor = callbackExecutor;
+            return this;
+        }
+
+        /**
+         * 其他producer配置,比如partitioner.class、interceptor.classes
+         */
+        public Builder<K, V> property(String key, Object value) {
+            overrides.put(key, value);
+            return this;
+        }
+
+        public Producer<K, V> build() {
+            return new Producer<>(this);
+        }
+    }
 }
@@ -0,0 +1,108 @@
+package cn.dc.kafkaapi;
+
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 每个分区的在途记录数和ack延迟,分区器按它避开负载高的分区
+ * <p>
+ * 分区器和拦截器由producer分别实例化,通过配置项partitioner.load.tracker指定同一个名字共享实例:
+ * 分区器选定分区时onSend,拦截器收到ack时onAck。
+ * 延迟是指数加权平均,新样本权重ALPHA。
+ */
+public final class PartitionLoadTracker {
+
+    public static final String TRACKER_CONFIG = "partitioner.load.tracker";
+
+    private static final double ALPHA = 0.2;
+
+    private static final ConcurrentMap<String, PartitionLoadTracker> TRACKERS = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<TopicPartition, Load> loads = new ConcurrentHashMap<>();
+
+    private PartitionLoadTracker() {
+    }
+
+    /**
+     * 按配置中的名字取共享实例,没有配置时用default
+     */
+    public static PartitionLoadTracker of(Map<String, ?> configs) {
+        Object name = configs.get(TRACKER_CONFIG);
+        return TRACKERS.computeIfAbsent(name == null ? "default" : name.toString(), key -> new PartitionLoadTracker());
+    }
+
+    public void onSend(String topic, int partition) {
+        load(topic, partition).inFlight.incrementAndGet();
+    }
+
+    /**
+     * @param latencyMs 从创建记录到ack的时间,未知时传负数
+     */
+    public void onAck(String topic, int partition, long latencyMs) {
+        if (partition < 0) return;
+        Load load = load(topic, partition);
+        //分区器重建视图后可能收到旧的ack,不减到负数
+        load.inFlight.updateAndGet(n -> n > 0 ? n - 1 : 0);
+        if (latencyMs >= 0) {
+            load.latency.updateAndGet(bits -> {
+                double current = Double.longBitsToDouble(bits);
+                double next = current == 0 ? latencyMs : current + ALPHA * (latencyMs - current);
+                return Double.doubleToLongBits(next);
+            });
+        }
+    }
+
+    /**
+     * 撤销一次onSend,记录没有真正发往这个分区
+     */
+    public void onCancel(String topic, int partition) {
+        if (partition < 0) return;
+        load(topic, partition).inFlight.updateAndGet(n -> n > 0 ? n - 1 : 0);
+    }
+
+    public long inFlight(String topic, int partition) {
+        Load load = loads.get(new TopicPartition(topic, partition));
+        return load == null ? 0 : load.inFlight.get();
+    }
+
+    public double latencyMs(String topic, int partition) {
+        Load load = loads.get(new TopicPartition(topic, partition));
+        return load == null ? 0 : Double.longBitsToDouble(load.latency.get());
+    }
+
+    /**
+     * 负载分数,越小越空闲:在途数和延迟任一升高都会变大
+     */
+    public double score(String topic, int partition) {
+        return (inFlight(topic, partition) + 1) * (latencyMs(topic, partition) + 1);
+    }
+
+    /**
+     * 分区数变化后丢掉不存在的分区
+     */
+    public void retain(String topic, int partitions) {
+        for (Iterator<TopicPartition> it = loads.keySet().iterator(); it.hasNext(); ) {
+            TopicPartition tp = it.next();
+            if (tp.topic().equals(topic) && tp.partition() >= partitions) {
+                it.remove();
+            }
+        }
+    }
+
+    private Load load(String topic, int partition) {
+        return loads.computeIfAbsent(new TopicPartition(topic, partition), tp -> new Load());
+    }
+
+    private static final class Load {
+
+        private final AtomicLong inFlight = new AtomicLong();
+
+        /*double的位表示,CAS更新*/
+        private final AtomicLong latency = new AtomicLong();
+    }
+}
@@ -1,22 +1,201 @@
 package cn.dc.kafkaapi;
 
 import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.utils.Utils;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * 分区器,partitioner.mode配置三种模式:
+ * <p>
+ * hash:有key时murmur2(key) % 分区数,和DefaultPartitioner的映射一致,同一个key总在同一个分区;
+ * 没有key时在可用分区间轮询。
+ * sticky(默认):有key时同hash;没有key时一直发同一个分区,累计到batch.size字节后换下一个分区,
+ * 每个batch都能很快填满,比逐条轮询的batch更大、请求更少。
+ * load-aware:同sticky,换分区时随机取两个可用分区,选在途记录数和ack延迟更低的一个。
+ * 负载数据来自PartitionLoadTracker,在途数靠CounterInterceptor收到ack时减少,
+ * 所以load-aware必须同时配置CounterInterceptor,否则configure抛异常;其他模式不记录负载。
+ * <p>
+ * 集群元数据更新后(Cluster对象变化)重建分区视图,粘住的分区不可用时立即换分区。
+ */
 public class Partitioner implements org.apache.kafka.clients.producer.Partitioner {
+
+    public static final String MODE_CONFIG = "partitioner.mode";
+
+    /*换分区的字节数,默认取producer的batch.size*/
+    public static final String STICKY_BYTES_CONFIG = "partitioner.sticky.bytes";
+
+    private static final String COUNTER_INTERCEPTOR = "cn.dc.kafkaapi.interceptor.CounterInterceptor";
+
+    enum Mode {
+        HASH, STICKY, LOAD_AWARE
+    }
+
+    private Mode mode = Mode.STICKY;
+
+    private long stickyBytes = 16384;
+
+    /*只有load-aware模式才有*/
+    private PartitionLoadTracker tracker;
+
+    private final ConcurrentMap<String, Sticky> stickies = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, AtomicInteger> counters = new ConcurrentHashMap<>();
+
+    private volatile Cluster lastCluster;
+
     @Override
-    public int partition(String s, Object o, byte[] bytes, Object o1, byte[] bytes1, Cluster cluster) {
-        return 0;
+    public void configure(Map<String, ?> map) {
+        Object mode = map.get(MODE_CONFIG);
+        if (mode != null) {
+            this.mode = Mode.valueOf(mode.toString().trim().toUpperCase().replace('-', '_'));
+        }
+        Object bytes = map.containsKey(STICKY_BYTES_CONFIG) ? map.get(STICKY_BYTES_CONFIG) : map.get("batch.size");
+        if (bytes != null) {
+            this.stickyBytes = Long.parseLong(bytes.toString());
+        }
+        if (this.mode == Mode.LOAD_AWARE) {
+            if (!hasCounterInterceptor(map.get("interceptor.classes"))) {
+                throw new ConfigException(MODE_CONFIG, mode, "load-aware requires " + COUNTER_INTERCEPTOR
+                        + " in interceptor.classes to report acks");
+            }
+            this.tracker = PartitionLoadTracker.of(map);
+        }
+    }
+
+    private static boolean hasCounterInterceptor(Object interceptors) {
+        if (interceptors == null) return false;
+        Iterable<?> classes = interceptors instanceof Iterable ? (Iterable<?>) interceptors
+                : Arrays.asList(interceptors.toString().split(","));
+        for (Object c : classes) {
+            String name = c instanceof Class ? ((Class<?>) c).getName() : c.toString().trim();
+            if (COUNTER_INTERCEPTOR.equals(name)) return true;
+        }
+        return false;
     }
 
     @Override
-    public void close() {
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+        if (cluster != lastCluster) {
+            onMetadataUpdate(cluster);
+        }
+        List<PartitionInfo> partitions = cluster.partitionsForTopic(topic);
+        int numPartitions = partitions.size();
+        int partition;
+        if (keyBytes != null) {
+            partition = Utils.toPositive(Utils.murmur2(keyBytes)) % numPartitions;
+        } else if (mode == Mode.HASH) {
+            partition = roundRobin(topic, cluster, numPartitions);
+        } else {
+            int size = valueBytes == null ? 0 : valueBytes.length;
+            partition = stickies.computeIfAbsent(topic, t -> new Sticky()).next(topic, cluster, size);
+        }
+        if (tracker != null) {
+            tracker.onSend(topic, partition);
+        }
+        return partition;
+    }
 
+    /*
+    元数据变化:分区数变了的topic重置负载数据,粘住的分区不可用时下次发送换分区
+     */
+    private synchronized void onMetadataUpdate(Cluster cluster) {
+        if (cluster == lastCluster) return;
+        Cluster previous = lastCluster;
+        for (Map.Entry<String, Sticky> entry : stickies.entrySet()) {
+            String topic = entry.getKey();
+            int partitions = cluster.partitionCountForTopic(topic) == null ? 0 : cluster.partitionCountForTopic(topic);
+            if (tracker != null && previous != null && !Integer.valueOf(partitions).equals(previous.partitionCountForTopic(topic))) {
+                tracker.retain(topic, partitions);
+            }
+            entry.getValue().invalidateIfUnavailable(topic, cluster);
+        }
+        lastCluster = cluster;
+    }
+
+    private int roundRobin(String topic, Cluster cluster, int numPartitions) {
+        int next = Utils.toPositive(counters.computeIfAbsent(topic, t -> new AtomicInteger(ThreadLocalRandom.current().nextInt()))
+                .getAndIncrement());
+        List<PartitionInfo> available = cluster.availablePartitionsForTopic(topic);
+        return available.isEmpty() ? next % numPartitions : available.get(next % available.size()).partition();
+    }
+
+    /*
+    选下一个粘住的分区,优先可用分区,不和当前分区重复
+     */
+    private int choose(String topic, Cluster cluster, int current) {
+        List<PartitionInfo> candidates = cluster.availablePartitionsForTopic(topic);
+        if (candidates.isEmpty()) {
+            candidates = cluster.partitionsForTopic(topic);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (candidates.size() == 1) {
+            return candidates.get(0).partition();
+        }
+        int first = pick(candidates, random, current);
+        if (mode != Mode.LOAD_AWARE) {
+            return first;
+        }
+        //两个随机候选里选负载低的,不会所有producer同时涌向同一个最空闲的分区
+        int second = pick(candidates, random, current);
+        return tracker.score(topic, second) < tracker.score(topic, first) ? second : first;
+    }
+
+    private static int pick(List<PartitionInfo> candidates, ThreadLocalRandom random, int exclude) {
+        int partition = candidates.get(random.nextInt(candidates.size())).partition();
+        if (partition == exclude) {
+            partition = candidates.get(random.nextInt(candidates.size())).partition();
+        }
+        return partition;
+    }
+
+    /*
+    2.4以上的客户端需要新batch时会调用这里,然后对同一条记录再调用一次partition,撤销上一次的在途计数;
+    不加@Override,老版本的接口里没有这个方法
+     */
+    public void onNewBatch(String topic, Cluster cluster, int prevPartition) {
+        if (tracker != null) {
+            tracker.onCancel(topic, prevPartition);
+        }
     }
 
     @Override
-    public void configure(Map<String, ?> map) {
+    public void close() {
+
+    }
+
+    /*
+    一个topic当前粘住的分区和已经发往它的字节数
+     */
+    private final class Sticky {
+
+        private int partition = -1;
+
+        private long bytes;
+
+        synchronized int next(String topic, Cluster cluster, int size) {
+            if (partition < 0 || bytes >= stickyBytes) {
+                partition = choose(topic, cluster, partition);
+                bytes = 0;
+            }
+            bytes += size;
+            return partition;
+        }
 
+        synchronized void invalidateIfUnavailable(String topic, Cluster cluster) {
+            if (partition < 0) return;
+            for (PartitionInfo info : cluster.availablePartitionsForTopic(topic)) {
+                if (info.partition() == partition) return;
+            }
+            partition = -1;
+        }
     }
 }
@@ -5,15 +5,36 @@ import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.util.*;
 /*
 自定义来维护offset的Consumer
+offset和处理结果(这里是每个分区累计消费的条数)一起写入本地的OffsetStore,
+重启或rebalance后从保存的位置继续,结果和offset不会一个多一个少
  */
 public class CustomConsumer {
+    private static final Logger log = LoggerFactory.getLogger(CustomConsumer.class);
     private static Map<TopicPartition, Long> currentOffset = new HashMap<>();
+    //处理结果:每个分区累计消费的条数
+    private static Map<TopicPartition, Long> counts = new HashMap<>();
+    private static OffsetStore store;
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        store = new FileOffsetStore(Paths.get("offsets", "test-first.log"));
+        //退出时刷出还没落盘的commit
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                store.close();
+            } catch (IOException e) {
+                log.error("close offset store failed", e);
+            }
+        }));
         //创建配置信息
         Properties props = new Properties();
         //Kafka 集群
@@ -35,14 +56,27 @@ public class CustomConsumer {
             public void
             onPartitionsRevoked(Collection<TopicPartition> partitions) {
                 commitOffset(currentOffset);
+                //分区要交给别人了,同步刷盘
+                try {
+                    store.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
             }
             //该方法会在 Rebalance 之后调用
             @Override
             public void
             onPartitionsAssigned(Collection<TopicPartition> partitions) {
                 currentOffset.clear();
+                counts.clear();
                 for (TopicPartition partition : partitions) {
-                    consumer.seek(partition, getOffset(partition));//定位到最近提交的 offset 位置继续消费
+                    long offset = getOffset(partition);
+                    //没有保存过时不seek,从group提交的位置或auto.offset.reset开始
+                    if (offset >= 0) {
+                        consumer.seek(partition, offset);//定位到最近提交的 offset 位置继续消费
+                        byte[] count = store.result(partition);
+                        counts.put(partition, count == null ? 0L : ByteBuffer.wrap(count).getLong());
+                    }
                 }
             }
         });
@@ -53,18 +87,31 @@ public class CustomConsumer {
             ConsumerRecords<String, String> records = consumer.poll(100);//消费者拉取数据
             for (ConsumerRecord<String, String> record : records) {
                 System.out.printf("offset = %d, key = %s, value = %s%n", record.offset(), record.key(), record.value());
-                currentOffset.put(new TopicPartition(record.topic(), record.partition()), record.offset());
+                TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                //保存下一条要消费的位置
+                currentOffset.put(partition, record.offset() + 1);
+                counts.merge(partition, 1L, Long::sum);
             }
-            commitOffset(currentOffset);//异步提交offset
+            commitOffset(currentOffset);//写入缓冲,后台批量刷盘
         }
     }
 
     //获取某分区的最新 offset
     private static long getOffset(TopicPartition partition) {
-        return 0;
+        return store.offset(partition);
     }
 
-    //提交该消费者所有分区的 offset
+    //提交该消费者所有分区的 offset,和这些分区的处理结果一起写入
     private static void commitOffset(Map<TopicPartition, Long> currentOffset) {
+        Map<TopicPartition, byte[]> results = new HashMap<>();
+        for (TopicPartition partition : currentOffset.keySet()) {
+            results.put(partition, ByteBuffer.allocate(8).putLong(counts.getOrDefault(partition, 0L)).array());
+        }
+        try {
+            store.commit(currentOffset, results);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        currentOffset.clear();
     }
 }
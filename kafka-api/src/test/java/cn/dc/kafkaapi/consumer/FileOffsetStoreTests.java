@@ -0,0 +1,67 @@
+package cn.dc.kafkaapi.consumer;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileOffsetStoreTests {
+
+    private static final TopicPartition TP = new TopicPartition("first", 0);
+
+    @Test
+    void reopenRestoresOffsetsAndResults() throws IOException {
+        Path path = Files.createTempDirectory("offsets").resolve("store.log");
+        try (FileOffsetStore store = new FileOffsetStore(path)) {
+            assertEquals(-1, store.offset(TP));
+            store.commit(Collections.singletonMap(TP, 10L), Collections.singletonMap(TP, new byte[]{1}));
+            store.commit(Collections.singletonMap(TP, 20L), Collections.singletonMap(TP, new byte[]{2}));
+            assertEquals(20, store.offset(TP));
+        }
+        try (FileOffsetStore store = new FileOffsetStore(path)) {
+            assertEquals(20, store.offset(TP));
+            assertArrayEquals(new byte[]{2}, store.result(TP));
+            assertNull(store.result(new TopicPartition("first", 1)));
+        }
+    }
+
+    @Test
+    void incompleteTailIsDropped() throws IOException {
+        Path path = Files.createTempDirectory("offsets").resolve("store.log");
+        try (FileOffsetStore store = new FileOffsetStore(path)) {
+            store.commit(Collections.singletonMap(TP, 10L), null);
+        }
+        long size = Files.size(path);
+        //模拟写到一半宕机
+        Files.write(path, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+        try (FileOffsetStore store = new FileOffsetStore(path)) {
+            assertEquals(10, store.offset(TP));
+            assertEquals(size, Files.size(path));
+        }
+    }
+
+    @Test
+    void compactKeepsLatest() throws IOException {
+        Path path = Files.createTempDirectory("offsets").resolve("store.log");
+        try (FileOffsetStore store = new FileOffsetStore(path, 100, 256)) {
+            for (long i = 1; i <= 100; i++) {
+                store.commit(Collections.singletonMap(TP, i), Collections.singletonMap(TP, new byte[]{(byte) i}));
+                store.flush();
+            }
+        }
+        assertTrue(Files.size(path) < 256);
+        try (FileOffsetStore store = new FileOffsetStore(path)) {
+            assertEquals(100, store.offset(TP));
+            assertArrayEquals(new byte[]{100}, store.result(TP));
+        }
+    }
+}
@@ -46,7 +46,8 @@ public class MyConsumer {
                     /*
                     printf，不是print和println
                      */
-                    System.out.printf("offset = %d, key = %s, value= %s%n", record.offset(), record.key(), record.value());
+                    System.out.printf("offset = %d, key = %s, value= %s, latency = %d ms%n", record.offset(), record.key(), record.value(),
+                            RecordLatency.endToEndMs(record));
                 //同步提交，当前线程会阻塞直到 offset 提交成功
                 consumer.commitSync();
                 //异步提交
@@ -0,0 +1,47 @@
+package cn.dc.kafkaapi.consumer;
+
+import cn.dc.kafkaapi.interceptor.LatencyHistogram;
+import cn.dc.kafkaapi.interceptor.TimeInterceptor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+
+/**
+ * 消费端读取TimeInterceptor写入的发送时间,计算端到端延迟(发送到消费)
+ * 生产和消费机器的时钟差会直接算进延迟里
+ */
+public final class RecordLatency {
+
+    private RecordLatency() {
+    }
+
+    /**
+     * 发送时间,没有header时返回-1
+     */
+    public static long sendTimestamp(ConsumerRecord<?, ?> record) {
+        return TimeInterceptor.decode(record.headers().lastHeader(TimeInterceptor.HEADER));
+    }
+
+    /**
+     * 从发送到现在的毫秒数,没有header时返回-1
+     */
+    public static long endToEndMs(ConsumerRecord<?, ?> record) {
+        long sent = sendTimestamp(record);
+        return sent < 0 ? -1 : Math.max(0, System.currentTimeMillis() - sent);
+    }
+
+    /**
+     * 把一批记录的延迟记到直方图,返回有发送时间的记录数
+     */
+    public static int record(ConsumerRecords<?, ?> records, LatencyHistogram histogram) {
+        long now = System.currentTimeMillis();
+        int recorded = 0;
+        for (ConsumerRecord<?, ?> record : records) {
+            long sent = sendTimestamp(record);
+            if (sent >= 0) {
+                histogram.record(now - sent);
+                recorded++;
+            }
+        }
+        return recorded;
+    }
+}
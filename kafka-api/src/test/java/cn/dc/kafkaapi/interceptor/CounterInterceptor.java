@@ -0,0 +1,246 @@
+package cn.dc.kafkaapi.interceptor;
+
+import cn.dc.kafkaapi.PartitionLoadTracker;
+import org.apache.kafka.clients.producer.ProducerInterceptor;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * 计数拦截器:成功/失败数、速率,以及每个分区从发送到ack的延迟直方图
+ * <p>
+ * onAcknowledgement在producer的io线程里执行,可能有多个线程,这里只做LongAdder自增和直方图的原子自增,
+ * 速率由后台线程每5秒计算一次,分位数在JMX读取时计算。
+ * 记录没有指定timestamp时KafkaProducer用send时的时间作为CreateTime,ack时metadata.timestamp()就是发送时间,
+ * 不需要在onSend里复制record。metadata.timestamp()不是发送时间的topic不统计延迟:
+ * onSend见过自带timestamp(事件时间)的记录的topic,以及counter.latency.exclude.topics里配置的LogAppendTime topic;
+ * 另外超过delivery.timeout.ms的值也丢弃。
+ * 同时把延迟报告给PartitionLoadTracker,供负载感知的分区器使用,不统计延迟的topic只报告ack。
+ */
+public class CounterInterceptor<K, V> implements ProducerInterceptor<K, V>, CounterInterceptorMXBean {
+
+    private static final Logger log = LoggerFactory.getLogger(CounterInterceptor.class);
+
+    private static final long TICK_SECONDS = 5;
+
+    /*1分钟指数加权,每个tick的衰减系数*/
+    private static final double ALPHA = 1 - Math.exp(-TICK_SECONDS / 60.0);
+
+    private static final ScheduledExecutorService TICKER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "counter-interceptor-ticker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder successCounter = new LongAdder();
+
+    private final LongAdder errorCounter = new LongAdder();
+
+    private final ConcurrentMap<TopicPartition, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    private final Rate successRate = new Rate(successCounter);
+
+    private final Rate errorRate = new Rate(errorCounter);
+
+    private PartitionLoadTracker tracker;
+
+    /*不统计延迟的topic,逗号分隔,用于LogAppendTime的topic*/
+    public static final String EXCLUDE_TOPICS_CONFIG = "counter.latency.exclude.topics";
+
+    /*metadata.timestamp()不是发送时间的topic*/
+    private final Set<String> untimedTopics = ConcurrentHashMap.newKeySet();
+
+    private long maxLatencyMs = 120_000;
+
+    private ObjectName objectName;
+
+    private ScheduledFuture<?> tick;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        tracker = PartitionLoadTracker.of(configs);
+        Object exclude = configs.get(EXCLUDE_TOPICS_CONFIG);
+        if (exclude != null) {
+            for (String topic : exclude.toString().split(",")) {
+                if (!topic.trim().isEmpty()) untimedTopics.add(topic.trim());
+            }
+        }
+        Object deliveryTimeout = configs.get("delivery.timeout.ms");
+        if (deliveryTimeout != null) {
+            maxLatencyMs = Long.parseLong(deliveryTimeout.toString());
+        }
+        tick = TICKER.scheduleAtFixedRate(() -> {
+            successRate.tick();
+            errorRate.tick();
+        }, TICK_SECONDS, TICK_SECONDS, TimeUnit.SECONDS);
+        Object clientId = configs.get("client.id");
+        try {
+            objectName = new ObjectName("cn.dc.kafkaapi:type=CounterInterceptor,client="
+                    + ObjectName.quote(clientId == null ? "producer-" + System.identityHashCode(this) : clientId.toString()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException e) {
+            //同名的producer已经注册过,只是看不到这个实例的指标
+            objectName = null;
+        }
+    }
+
+    /**
+     * 记录自带timestamp时,这个topic的ack时间戳不再代表发送时间
+     */
+    @Override
+    public ProducerRecord<K, V> onSend(ProducerRecord<K, V> record) {
+        if (record.timestamp() != null && !untimedTopics.contains(record.topic())) {
+            untimedTopics.add(record.topic());
+        }
+        return record;
+    }
+
+    @Override
+    public void onAcknowledgement(RecordMetadata metadata, Exception exception) {
+        // 统计成功和失败的次数
+        if (exception == null) {
+            successCounter.increment();
+        } else {
+            errorCounter.increment();
+        }
+        if (metadata == null || metadata.partition() < 0) {
+            return;
+        }
+        long latency = latency(metadata);
+        if (latency >= 0 && exception == null) {
+            TopicPartition tp = new TopicPartition(metadata.topic(), metadata.partition());
+            LatencyHistogram histogram = latencies.get(tp);
+            if (histogram == null) {
+                histogram = latencies.computeIfAbsent(tp, key -> new LatencyHistogram());
+            }
+            histogram.record(latency);
+        }
+        if (tracker != null) {
+            tracker.onAck(metadata.topic(), metadata.partition(), latency);
+        }
+    }
+
+    /*
+    从发送到ack的毫秒数,时间戳不是发送时间或者不合理时返回-1
+     */
+    private long latency(RecordMetadata metadata) {
+        if (metadata.timestamp() <= 0 || untimedTopics.contains(metadata.topic())) {
+            return -1;
+        }
+        long latency = System.currentTimeMillis() - metadata.timestamp();
+        return latency >= 0 && latency <= maxLatencyMs ? latency : -1;
+    }
+
+    @Override
+    public long getSuccessCount() {
+        return successCounter.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errorCounter.sum();
+    }
+
+    @Override
+    public double getSuccessRate() {
+        return successRate.get();
+    }
+
+    @Override
+    public double getErrorRate() {
+        return errorRate.get();
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP50() {
+        return latencies(h -> h.percentile(50));
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP99() {
+        return latencies(h -> h.percentile(99));
+    }
+
+    @Override
+    public Map<String, Long> getLatencyMax() {
+        return latencies(LatencyHistogram::getMax);
+    }
+
+    /**
+     * 一个分区的延迟直方图,没有数据时返回null
+     */
+    public LatencyHistogram getLatency(String topic, int partition) {
+        return latencies.get(new TopicPartition(topic, partition));
+    }
+
+    private Map<String, Long> latencies(ToLongFunction<LatencyHistogram> statistic) {
+        Map<String, Long> result = new TreeMap<>();
+        latencies.forEach((tp, histogram) -> result.put(tp.toString(), statistic.applyAsLong(histogram)));
+        return result;
+    }
+
+    /*
+    注销JMX,最终结果打一行日志
+     */
+    @Override
+    public void close() {
+        if (tick != null) {
+            tick.cancel(false);
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException ignored) {
+                //已经注销
+            }
+        }
+        log.info("sent: {} succeeded, {} failed", getSuccessCount(), getErrorCount());
+    }
+
+    /*
+    指数加权的每秒速率,只在后台线程更新
+     */
+    private static final class Rate {
+
+        private final LongAdder counter;
+
+        private long lastCount;
+
+        private volatile double rate;
+
+        private boolean initialized;
+
+        Rate(LongAdder counter) {
+            this.counter = counter;
+        }
+
+        void tick() {
+            long count = counter.sum();
+            double instant = (count - lastCount) / (double) TICK_SECONDS;
+            lastCount = count;
+            rate = initialized ? rate + ALPHA * (instant - rate) : instant;
+            initialized = true;
+        }
+
+        double get() {
+            return rate;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package cn.dc.kafkaapi.interceptor;
+
+import java.util.Map;
+
+/**
+ * CounterInterceptor在JMX中的视图,对象名cn.dc.kafkaapi:type=CounterInterceptor,client=client.id
+ * 延迟按分区统计,key为topic-partition,单位毫秒
+ */
+public interface CounterInterceptorMXBean {
+
+    long getSuccessCount();
+
+    long getErrorCount();
+
+    /*每秒成功数,1分钟指数加权*/
+    double getSuccessRate();
+
+    /*每秒失败数,1分钟指数加权*/
+    double getErrorRate();
+
+    Map<String, Long> getLatencyP50();
+
+    Map<String, Long> getLatencyP99();
+
+    Map<String, Long> getLatencyMax();
+}
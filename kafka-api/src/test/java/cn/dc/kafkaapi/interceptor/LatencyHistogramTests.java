@@ -0,0 +1,33 @@
+package cn.dc.kafkaapi.interceptor;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTests {
+
+    @Test
+    void bucketsAreContiguous() {
+        for (long v = 0; v < 100_000; v++) {
+            int index = LatencyHistogram.index(v);
+            assertTrue(LatencyHistogram.upperBound(index) >= v);
+            if (index > 0) assertTrue(LatencyHistogram.upperBound(index - 1) < v);
+        }
+    }
+
+    @Test
+    void percentilesWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 1000; v++) {
+            histogram.record(v);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        long p50 = histogram.percentile(50);
+        long p99 = histogram.percentile(99);
+        assertTrue(p50 >= 500 && p50 <= 500 * 33 / 32, "p50=" + p50);
+        assertTrue(p99 >= 990 && p99 <= 1000, "p99=" + p99);
+        assertEquals(0, new LatencyHistogram().percentile(99));
+    }
+}
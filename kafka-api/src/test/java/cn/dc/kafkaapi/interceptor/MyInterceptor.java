@@ -1,12 +1,12 @@
 package cn.dc.kafkaapi.interceptor;
 
-import org.apache.kafka.clients.producer.*;
+import cn.dc.kafkaapi.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Properties;
 
 /**
  * （1）configure(configs)
@@ -29,97 +29,30 @@ import java.util.Properties;
  * <p>
  * 需求：
  * 实现一个双 interceptor 组成的拦截链。
- * 第一个 interceptor 会在消息发送前将时间戳信息加到消息 value 的最前部；
+ * 第一个 interceptor 会在消息发送前将时间戳信息写入消息的 header（不改动 value，见 TimeInterceptor）；
  * 第二个 interceptor 会在消息发送后更新成功发送消息数或失败发送消息数。
  */
 public class MyInterceptor {
     @Test
     void testInterceptor() {
-        // 1 设置配置信息
-        Properties props = new Properties();
-        props.put("bootstrap.servers", "hadoop102:9092");
-        props.put("acks", "all");
-        props.put("retries", 3);
-        props.put("batch.size", 16384);
-        props.put("linger.ms", 1);
-        props.put("buffer.memory", 33554432);
-        props.put("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");
-        props.put("value.serializer", "org.apache.kafka.common.serialization.StringSerializer");
-        // 2 构建拦截链
+        // 1 构建拦截链
         List<String> interceptors = new ArrayList<>();
-        interceptors.add("com.atguigu.kafka.interceptor.TimeInterceptor");
-        interceptors.add("com.atguigu.kafka.interceptor.CounterInterceptor");
-        // 3设置interceptors
-        props.put(ProducerConfig.INTERCEPTOR_CLASSES_CONFIG, interceptors);
+        interceptors.add("cn.dc.kafkaapi.interceptor.TimeInterceptor");
+        interceptors.add("cn.dc.kafkaapi.interceptor.CounterInterceptor");
+        // 2 producer服务:延迟优先的profile,拦截器和分区器作为额外配置
+        // 分区器:没有key时粘住一个分区填满batch,换分区时避开负载高的分区
+        Producer<String, String> producer = Producer.builder("hadoop102:9092", new StringSerializer(), new StringSerializer())
+                .profile(Producer.Profile.LATENCY)
+                .property(ProducerConfig.INTERCEPTOR_CLASSES_CONFIG, interceptors)
+                .property(ProducerConfig.PARTITIONER_CLASS_CONFIG, "cn.dc.kafkaapi.Partitioner")
+                .property("partitioner.mode", "load-aware")
+                .build();
         String topic = "first";
-        Producer<String, String> producer = new KafkaProducer<>(props);
-        // 4 发送消息
+        // 3 发送消息
         for (int i = 0; i < 10; i++) {
-            ProducerRecord<String, String> record = new ProducerRecord<>(topic, "message" + i);
-            producer.send(record);
+            producer.fire(topic, null, "message" + i);
         }
-        // 5 一定要关闭 producer，这样才会调用 interceptor 的 close 方法
+        // 4 一定要关闭 producer，这样才会调用 interceptor 的 close 方法
         producer.close();
     }
 }
-
-/**
- * 给record添加事件标记
- */
-class TimeInterceptor implements ProducerInterceptor<String, String> {
-    @Override
-    public void configure(Map<String, ?> configs) {
-    }
-
-    @Override
-    public ProducerRecord<String, String> onSend(ProducerRecord<String, String> record) {
-        // 创建一个新的 record，把时间戳写入消息体的最前部
-        return new ProducerRecord(record.topic(), record.partition(), record.timestamp(), record.key(),
-                System.currentTimeMillis() + "," + record.value().toString());
-    }
-
-    @Override
-    public void onAcknowledgement(RecordMetadata metadata, Exception exception) {
-    }
-
-    @Override
-    public void close() {
-    }
-}
-
-/**
- * 计数
- */
-class CounterInterceptor implements ProducerInterceptor<String, String> {
-    private int errorCounter = 0;
-    private int successCounter = 0;
-
-    @Override
-    public void configure(Map<String, ?> configs) {
-    }
-
-    @Override
-    public ProducerRecord<String, String> onSend(ProducerRecord<String, String> record) {
-        return record;
-    }
-
-    @Override
-    public void onAcknowledgement(RecordMetadata metadata, Exception exception) {
-        // 统计成功和失败的次数
-        if (exception == null) {
-            successCounter++;
-        } else {
-            errorCounter++;
-        }
-    }
-
-    /*
-    打印结果
-     */
-    @Override
-    public void close() {
-
-        System.out.println("Successful sent: " + successCounter);
-        System.out.println("Failed sent: " + errorCounter);
-    }
-}
\ No newline at end of file
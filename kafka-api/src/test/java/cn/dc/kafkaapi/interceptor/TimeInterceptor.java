@@ -0,0 +1,68 @@
+package cn.dc.kafkaapi.interceptor;
+
+import org.apache.kafka.clients.producer.ProducerInterceptor;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import java.util.Map;
+
+/**
+ * 给record添加发送时间:写成8字节的header,value不变
+ * <p>
+ * 原来把"时间戳,"拼在value前面,每条消息要拼接字符串、复制一遍value,消费端还要拆字符串;
+ * 现在key和value原样引用,只是换一份带发送时间的headers,消费端用RecordLatency读取。
+ * 不改调用方的record:send之后它的headers是只读的,同一个record重发时往里加header会失败。
+ * headers需要0.11以上的客户端和broker。
+ */
+public class TimeInterceptor<K, V> implements ProducerInterceptor<K, V> {
+
+    public static final String HEADER = "send-ts";
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+    }
+
+    @Override
+    public ProducerRecord<K, V> onSend(ProducerRecord<K, V> record) {
+        RecordHeaders headers = new RecordHeaders();
+        for (Header header : record.headers()) {
+            //重发的record可能已经带着上一次的发送时间
+            if (!HEADER.equals(header.key())) headers.add(header);
+        }
+        headers.add(HEADER, encode(System.currentTimeMillis()));
+        return new ProducerRecord<>(record.topic(), record.partition(), record.timestamp(), record.key(), record.value(), headers);
+    }
+
+    @Override
+    public void onAcknowledgement(RecordMetadata metadata, Exception exception) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /*大端8字节*/
+    static byte[] encode(long timestamp) {
+        byte[] bytes = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            bytes[i] = (byte) timestamp;
+            timestamp >>>= 8;
+        }
+        return bytes;
+    }
+
+    /**
+     * 读取header中的发送时间,不是8字节时返回-1
+     */
+    public static long decode(Header header) {
+        byte[] bytes = header == null ? null : header.value();
+        if (bytes == null || bytes.length != 8) return -1;
+        long timestamp = 0;
+        for (byte b : bytes) {
+            timestamp = (timestamp << 8) | (b & 0xff);
+        }
+        return timestamp;
+    }
+}
@@ -0,0 +1,55 @@
+package cn.dc.kafkaapi.interceptor;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TimeInterceptorTests {
+
+    @Test
+    void headerRoundTrip() {
+        for (long ts : new long[]{0, 1, 255, 256, System.currentTimeMillis(), Long.MAX_VALUE}) {
+            assertEquals(ts, TimeInterceptor.decode(new RecordHeader(TimeInterceptor.HEADER, TimeInterceptor.encode(ts))));
+        }
+        assertEquals(-1, TimeInterceptor.decode(null));
+        assertEquals(-1, TimeInterceptor.decode(new RecordHeader(TimeInterceptor.HEADER, new byte[4])));
+    }
+
+    @Test
+    void valueUntouched() {
+        ProducerRecord<String, String> record = new ProducerRecord<>("first", "message");
+        ProducerRecord<String, String> sent = new TimeInterceptor<String, String>().onSend(record);
+        assertSame(record.value(), sent.value());
+        assertEquals(8, sent.headers().lastHeader(TimeInterceptor.HEADER).value().length);
+        assertNull(record.headers().lastHeader(TimeInterceptor.HEADER));
+    }
+
+    @Test
+    void sameRecordSentTwice() {
+        TimeInterceptor<String, String> interceptor = new TimeInterceptor<>();
+        ProducerRecord<String, String> record = new ProducerRecord<>("first", "message");
+        record.headers().add("trace", new byte[]{1});
+        //KafkaProducer.send之后headers变成只读
+        ProducerRecord<String, String> first = interceptor.onSend(record);
+        ((RecordHeaders) first.headers()).setReadOnly();
+        ((RecordHeaders) record.headers()).setReadOnly();
+        assertEquals(1, count(interceptor.onSend(record).headers().headers(TimeInterceptor.HEADER)));
+        //已经带着发送时间的record再发一次,旧的被替换
+        ProducerRecord<String, String> again = interceptor.onSend(first);
+        assertEquals(1, count(again.headers().headers(TimeInterceptor.HEADER)));
+        assertArrayEquals(new byte[]{1}, again.headers().lastHeader("trace").value());
+    }
+
+    private static int count(Iterable<Header> headers) {
+        int n = 0;
+        for (Header ignored : headers) n++;
+        return n;
+    }
+}